@@ -0,0 +1,60 @@
+package onl.tesseract.commandBuilder.benchmark;
+
+import onl.tesseract.commandBuilder.CommandDefinition;
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CommandDefinition#execute(CommandSender, String[])} on shallow and deep trees
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Param({"4", "16"})
+    int depth;
+
+    private CommandSender sender;
+    private CommandDefinition shallow;
+    private CommandDefinition deep;
+    private String[] shallowArgs;
+    private String[] deepArgs;
+
+    @Setup
+    public void setup()
+    {
+        sender = Fixtures.sender(true);
+        shallow = Fixtures.shallowTree();
+        shallowArgs = new String[]{"sub", "42"};
+        deep = Fixtures.deepTree(depth);
+        deepArgs = Fixtures.deepTreeArgs(depth);
+    }
+
+    @Benchmark
+    public boolean executeShallow()
+    {
+        return shallow.execute(sender, shallowArgs);
+    }
+
+    @Benchmark
+    public boolean executeDeep()
+    {
+        return deep.execute(sender, deepArgs);
+    }
+}
@@ -0,0 +1,106 @@
+package onl.tesseract.commandBuilder.benchmark;
+
+import onl.tesseract.commandBuilder.CommandArgument;
+import onl.tesseract.commandBuilder.CommandArgumentBuilderSteps;
+import onl.tesseract.commandBuilder.CommandBuilder;
+import onl.tesseract.commandBuilder.CommandDefinition;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Command trees and senders shared by the benchmarks
+ */
+final class Fixtures {
+
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Mocked sender. Stub-only mocks do not record invocations, so they do not grow during a benchmark.
+     */
+    static CommandSender sender(boolean op)
+    {
+        CommandSender sender = mock(CommandSender.class, withSettings().stubOnly());
+        when(sender.isOp()).thenReturn(op);
+        when(sender.getName()).thenReturn("bench");
+        return sender;
+    }
+
+    /**
+     * /root sub {number}
+     */
+    static CommandDefinition shallowTree()
+    {
+        return new CommandBuilder("root")
+                .subCommand(new CommandBuilder("sub")
+                        .withArg(new NumberArgument("number"))
+                        .command(env -> env.get("number", Integer.class)))
+                .build(null);
+    }
+
+    /**
+     * /root {number} level1 {number} level2 ... level{depth}
+     */
+    static CommandDefinition deepTree(int depth)
+    {
+        CommandBuilder leaf = new CommandBuilder("level" + depth).command(env -> {
+        });
+        for (int i = depth - 1; i >= 1; i--)
+            leaf = new CommandBuilder("level" + i)
+                    .withArg(new NumberArgument("n" + i))
+                    .subCommand(leaf);
+        return new CommandBuilder("root").subCommand(leaf).build(null);
+    }
+
+    static String[] deepTreeArgs(int depth)
+    {
+        String[] args = new String[depth * 2 - 1];
+        for (int i = 1; i <= depth; i++)
+        {
+            args[(i - 1) * 2] = "level" + i;
+            if (i < depth)
+                args[(i - 1) * 2 + 1] = String.valueOf(i);
+        }
+        return args;
+    }
+
+    /**
+     * Root command with many subcommands, every fifth one requiring a permission
+     */
+    static CommandDefinition wideTree(int subCommandCount)
+    {
+        CommandBuilder root = new CommandBuilder("root").description("Wide command");
+        for (int i = 0; i < subCommandCount; i++)
+        {
+            CommandBuilder subCommand = new CommandBuilder("sub" + i)
+                    .description("Subcommand " + i)
+                    .command(env -> {
+                    });
+            if (i % 5 == 0)
+                subCommand.permission("restricted");
+            root.subCommand(subCommand);
+        }
+        return root.build(null);
+    }
+
+    public static final class NumberArgument extends CommandArgument<Integer> {
+
+        public NumberArgument(@NotNull final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public void define(final CommandArgumentBuilderSteps.@NotNull Parser<Integer> builder)
+        {
+            builder.parser((input, env) -> Integer.parseInt(input))
+                   .tabCompleter((input, env) -> List.of("1", "2", "3"))
+                   .errorHandler(NumberFormatException.class, "Invalid number");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package onl.tesseract.commandBuilder.benchmark;
+
+import onl.tesseract.commandBuilder.CommandDefinition;
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CommandDefinition#helpGetPage(CommandSender, int)} for a sender seeing all subcommands, and one missing the
+ * restricted ones
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelpBenchmark {
+
+    @Param({"20", "200"})
+    int subCommandCount;
+
+    private CommandSender op;
+    private CommandSender player;
+    private CommandDefinition command;
+    private int lastPage;
+
+    @Setup
+    public void setup()
+    {
+        op = Fixtures.sender(true);
+        player = Fixtures.sender(false);
+        command = Fixtures.wideTree(subCommandCount);
+        lastPage = 0;
+        while (true)
+        {
+            try
+            {
+                command.helpGetPage(player, lastPage + 1);
+                lastPage++;
+            }
+            catch (IllegalArgumentException e)
+            {
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public String[] firstPageOp()
+    {
+        return command.helpGetPage(op, 0);
+    }
+
+    @Benchmark
+    public String[] firstPage()
+    {
+        return command.helpGetPage(player, 0);
+    }
+
+    @Benchmark
+    public String[] lastPage()
+    {
+        return command.helpGetPage(player, lastPage);
+    }
+}
@@ -0,0 +1,69 @@
+package onl.tesseract.commandBuilder.benchmark;
+
+import onl.tesseract.commandBuilder.Permission;
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link Permission#hasPermission} on permission chains, granted by the glob of the root node, so that the whole chain
+ * is walked
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionBenchmark {
+
+    @Param({"2", "8"})
+    int depth;
+
+    @Param({"false", "true"})
+    boolean cacheEnabled;
+
+    private CommandSender sender;
+    private Permission permission;
+
+    @Setup
+    public void setup()
+    {
+        StringBuilder name = new StringBuilder("root");
+        for (int i = 1; i < depth; i++)
+            name.append(".node").append(i);
+        permission = Permission.get(name.toString());
+
+        sender = Fixtures.sender(false);
+        when(sender.isPermissionSet(anyString())).thenReturn(false);
+        when(sender.isPermissionSet("root.*")).thenReturn(true);
+        when(sender.hasPermission("root.*")).thenReturn(true);
+        Permission.setCacheEnabled(cacheEnabled);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Permission.setCacheEnabled(false);
+    }
+
+    @Benchmark
+    public boolean hasPermission()
+    {
+        return permission.hasPermission(sender);
+    }
+}
@@ -0,0 +1,67 @@
+package onl.tesseract.commandBuilder.benchmark;
+
+import onl.tesseract.commandBuilder.CommandDefinition;
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subcommand and argument tab completion on a command with many subcommands
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TabCompleteBenchmark {
+
+    @Param({"50", "500"})
+    int subCommandCount;
+
+    /**
+     * Empty prefix matches every subcommand, "sub1" about a tenth, "sub4" + many digits none
+     */
+    @Param({"", "sub1", "sub4999"})
+    String prefix;
+
+    private CommandSender sender;
+    private CommandDefinition wide;
+    private CommandDefinition shallow;
+    private String[] subCommandArgs;
+    private String[] argumentArgs;
+
+    @Setup
+    public void setup()
+    {
+        sender = Fixtures.sender(false);
+        wide = Fixtures.wideTree(subCommandCount);
+        shallow = Fixtures.shallowTree();
+        subCommandArgs = new String[]{prefix};
+        argumentArgs = new String[]{"sub", ""};
+    }
+
+    @Benchmark
+    public List<String> completeSubCommand()
+    {
+        return wide.tabComplete(sender, subCommandArgs);
+    }
+
+    @Benchmark
+    public List<String> completeArgument()
+    {
+        return shallow.tabComplete(sender, argumentArgs);
+    }
+}
@@ -0,0 +1,123 @@
+package onl.tesseract.commandBuilder.benchmark;
+
+import onl.tesseract.commandBuilder.CommandContext;
+import onl.tesseract.commandBuilder.CommandEnvironment;
+import onl.tesseract.commandBuilder.annotation.Argument;
+import onl.tesseract.commandBuilder.annotation.Command;
+import onl.tesseract.commandBuilder.annotation.CommandBody;
+import onl.tesseract.commandBuilder.annotation.CommandPredicate;
+import onl.tesseract.commandBuilder.annotation.EnvInsert;
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotation-based tree building, through the {@link CommandContext} constructor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBuildBenchmark {
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    @Benchmark
+    public CommandContext build()
+    {
+        return new BenchCommand(parallel);
+    }
+
+    @Command(name = "bench", description = "Benchmarked command")
+    public static class BenchCommand extends CommandContext {
+
+        public BenchCommand()
+        {
+            this(false);
+        }
+
+        BenchCommand(boolean parallel)
+        {
+            super(clazz -> null, parallel);
+        }
+
+        @CommandBody
+        public void body(CommandSender sender)
+        {
+        }
+
+        @EnvInsert("bonus")
+        public int bonus()
+        {
+            return 1;
+        }
+
+        public boolean allowed(CommandSender sender)
+        {
+            return true;
+        }
+
+        @Command(description = "First")
+        @CommandPredicate("allowed")
+        public void first(@Argument(value = "n", clazz = Fixtures.NumberArgument.class) int n, CommandEnvironment env)
+        {
+        }
+
+        @Command(description = "Second")
+        public void second(@Argument(value = "a", clazz = Fixtures.NumberArgument.class) int a,
+                           @Argument(value = "b", clazz = Fixtures.NumberArgument.class, optional = true, def = "1") int b)
+        {
+        }
+
+        @Command(description = "Third", alias = "3")
+        public void third(CommandSender sender)
+        {
+        }
+
+        @Command(description = "Nested")
+        public static class NestedCommand {
+
+            @CommandBody
+            public void body()
+            {
+            }
+
+            @Command
+            public void one(@Argument(value = "n", clazz = Fixtures.NumberArgument.class) int n)
+            {
+            }
+
+            @Command
+            public void two()
+            {
+            }
+        }
+
+        @Command(description = "Other nested")
+        public static class OtherCommand {
+
+            @Command
+            public void one()
+            {
+            }
+
+            @Command
+            public void two()
+            {
+            }
+        }
+    }
+}
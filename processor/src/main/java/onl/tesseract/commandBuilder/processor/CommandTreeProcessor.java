@@ -0,0 +1,66 @@
+package onl.tesseract.commandBuilder.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * Generates a command tree class for each class annotated with {@code @Command}. The generated class builds the same
+ * command as the runtime annotation readers, calling command methods directly. Invalid declarations, such as a missing
+ * predicate method, are reported as compilation errors.
+ *
+ * @see CommandTreeWriter
+ */
+@SupportedAnnotationTypes(CommandTreeWriter.COMMAND)
+public final class CommandTreeProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv)
+    {
+        TypeElement commandAnnotation = processingEnv.getElementUtils().getTypeElement(CommandTreeWriter.COMMAND);
+        if (commandAnnotation == null)
+            return false;
+
+        for (final Element element : roundEnv.getElementsAnnotatedWith(commandAnnotation))
+        {
+            if (element.getKind() != ElementKind.CLASS)
+                continue;
+            TypeElement type = (TypeElement) element;
+            try
+            {
+                CommandTreeWriter writer = new CommandTreeWriter(processingEnv, type);
+                String source = writer.write();
+                JavaFileObject file = processingEnv.getFiler().createSourceFile(writer.getGeneratedName(), type);
+                try (Writer out = file.openWriter())
+                {
+                    out.write(source);
+                }
+            }
+            catch (CommandTreeWriter.InvalidCommandException e)
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.getElement());
+            }
+            catch (IOException e)
+            {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Cannot write generated command tree: " + e.getMessage(), type);
+            }
+        }
+        return false;
+    }
+}
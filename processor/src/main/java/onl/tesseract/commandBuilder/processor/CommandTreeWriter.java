@@ -0,0 +1,573 @@
+package onl.tesseract.commandBuilder.processor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the source of the command tree of a class annotated with {@code @Command}. The generated class follows the
+ * same rules as the runtime annotation readers: names, permissions, arguments, predicates, env inserters and
+ * subcommands sorted by help priority.
+ */
+final class CommandTreeWriter {
+
+    private static final String LIBRARY = "onl.tesseract.commandBuilder";
+    static final String COMMAND = LIBRARY + ".annotation.Command";
+    private static final String COMMAND_BODY = LIBRARY + ".annotation.CommandBody";
+    private static final String COMMAND_PREDICATE = LIBRARY + ".annotation.CommandPredicate";
+    private static final String PREDICATES = LIBRARY + ".annotation.Predicates";
+    private static final String ENV_INSERT = LIBRARY + ".annotation.EnvInsert";
+    private static final String ARGUMENT = LIBRARY + ".annotation.Argument";
+    private static final String ARGUMENT_NONE = ARGUMENT + ".None";
+    private static final String ENV = LIBRARY + ".annotation.Env";
+    private static final String COMMAND_ARGUMENT = LIBRARY + ".CommandArgument";
+    private static final String COMMAND_ENVIRONMENT = LIBRARY + ".CommandEnvironment";
+    private static final String COMMAND_SENDER = "org.bukkit.command.CommandSender";
+    private static final String PLAYER = "org.bukkit.entity.Player";
+    /**
+     * Must match GeneratedCommandTree.SUFFIX
+     */
+    private static final String SUFFIX = "_CommandTree";
+    private static final String INDENT = "        ";
+
+    private final Elements elements;
+    private final Types types;
+    private final TypeElement type;
+    private final String packageName;
+    private final StringBuilder methodCommands = new StringBuilder();
+    private int methodCommandCount;
+
+    CommandTreeWriter(ProcessingEnvironment processingEnv, TypeElement type)
+    {
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.type = type;
+        this.packageName = elements.getPackageOf(type).getQualifiedName().toString();
+    }
+
+    /**
+     * Qualified name of the generated class
+     */
+    String getGeneratedName()
+    {
+        return generatedName(type);
+    }
+
+    private String generatedName(TypeElement commandType)
+    {
+        String pkg = elements.getPackageOf(commandType).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(commandType).toString();
+        if (!pkg.isEmpty())
+            binaryName = binaryName.substring(pkg.length() + 1);
+        return (pkg.isEmpty() ? "" : pkg + ".") + binaryName.replace('$', '_') + SUFFIX;
+    }
+
+    String write() throws InvalidCommandException
+    {
+        checkAccessible(type);
+        StringBuilder builder = new StringBuilder();
+        writeClassCommand(builder, type);
+
+        String qualifiedName = getGeneratedName();
+        String simpleName = qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty())
+            source.append("package ").append(packageName).append(";\n\n");
+        source.append("import ").append(LIBRARY).append(".CachedResult;\n")
+              .append("import ").append(LIBRARY).append(".CommandBuilder;\n")
+              .append("import ").append(LIBRARY).append(".CommandEnvironment;\n")
+              .append("import ").append(LIBRARY).append(".CommandInstanceFactory;\n")
+              .append("import ").append(LIBRARY).append(".GeneratedCommandTree;\n")
+              .append("import ").append(LIBRARY).append(".PredicateDefinition;\n")
+              .append("import ").append(LIBRARY).append(".annotation.Perm;\n")
+              .append("import ").append(LIBRARY).append(".exception.CommandExecutionException;\n\n")
+              .append("import java.util.function.Consumer;\n\n")
+              .append("/**\n * Command tree of {@link ").append(type.getQualifiedName()).append("}\n */\n")
+              .append("@javax.annotation.processing.Generated(\"").append(CommandTreeProcessor.class.getName()).append("\")\n")
+              .append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+              .append("public final class ").append(simpleName).append(" implements GeneratedCommandTree {\n\n")
+              .append("    @Override\n")
+              .append("    public CommandBuilder builder(final CommandInstanceFactory instances)\n")
+              .append("    {\n")
+              .append(builder)
+              .append(INDENT).append("return command;\n")
+              .append("    }\n")
+              .append(methodCommands)
+              .append("}\n");
+        return source.toString();
+    }
+
+    private void writeClassCommand(StringBuilder out, TypeElement commandType) throws InvalidCommandException
+    {
+        AnnotationMirror command = getAnnotation(commandType, COMMAND);
+        String name = stringValue(command, "name");
+        ExecutableElement body = null;
+        for (ExecutableElement method : ElementFilter.methodsIn(commandType.getEnclosedElements()))
+        {
+            if (getAnnotation(method, COMMAND_BODY) != null)
+            {
+                body = method;
+                break;
+            }
+        }
+        String source = elements.getBinaryName(commandType) + (body != null ? "#" + body.getSimpleName() : "");
+        writeProperties(out, command, name.isEmpty() ? readName(commandType.getSimpleName().toString()) : name, source);
+
+        for (AnnotationMirror argument : annotationList(command, "args"))
+            writeArgument(out, "withArg", argument, classValue(argument, "clazz", commandType), commandType);
+        if (body != null)
+        {
+            writeParameterArguments(out, "withBodyArg", body);
+            writeBody(out, body);
+        }
+        else
+            out.append(INDENT).append("command.command((Consumer<CommandEnvironment>) null);\n");
+
+        writePredicates(out, commandType, commandType);
+        writeAliases(out, command);
+
+        for (ExecutableElement method : ElementFilter.methodsIn(commandType.getEnclosedElements()))
+        {
+            AnnotationMirror envInsert = getAnnotation(method, ENV_INSERT);
+            if (envInsert == null)
+                continue;
+            String function = "env -> " + invocation(method, true);
+            if ((Boolean) value(envInsert, "cached"))
+                function = "new CachedResult<>(" + literal(cacheKey(method)) + ", " + function + ", " + ttl(envInsert) + ")";
+            out.append(INDENT).append("command.envInserter(").append(literal(stringValue(envInsert, "value")))
+               .append(", ").append(function).append(");\n");
+        }
+
+        List<SubCommand> subCommands = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(commandType.getEnclosedElements()))
+        {
+            AnnotationMirror subCommand = getAnnotation(method, COMMAND);
+            if (subCommand == null)
+                continue;
+            String methodName = "method" + methodCommandCount++;
+            writeMethodCommand(methodName, method, subCommand);
+            subCommands.add(new SubCommand(intValue(subCommand, "helpPriority"), methodName + "(instances)"));
+        }
+        for (TypeElement memberType : ElementFilter.typesIn(commandType.getEnclosedElements()))
+            addClassSubCommand(subCommands, memberType);
+        // External classes
+        for (TypeMirror external : classList(command, "subCommands"))
+            addClassSubCommand(subCommands, (TypeElement) types.asElement(external));
+        // Stable sort, as done by the runtime reader
+        subCommands.sort(Comparator.comparingInt(SubCommand::priority));
+        for (SubCommand subCommand : subCommands)
+            out.append(INDENT).append("command.subCommand(").append(subCommand.expression()).append(");\n");
+    }
+
+    private void addClassSubCommand(List<SubCommand> subCommands, TypeElement subType) throws InvalidCommandException
+    {
+        AnnotationMirror subCommand = getAnnotation(subType, COMMAND);
+        if (subCommand == null || subType.getKind() != ElementKind.CLASS)
+            return;
+        checkAccessible(subType);
+        subCommands.add(new SubCommand(intValue(subCommand, "helpPriority"),
+                "new " + generatedName(subType) + "().builder(instances)"));
+    }
+
+    private void writeMethodCommand(String methodName, ExecutableElement method, AnnotationMirror command) throws InvalidCommandException
+    {
+        checkAccessible(method);
+        TypeElement declaringType = (TypeElement) method.getEnclosingElement();
+        StringBuilder out = new StringBuilder();
+        String name = stringValue(command, "name");
+        writeProperties(out, command, name.isEmpty() ? readName(method.getSimpleName().toString()) : name,
+                elements.getBinaryName(declaringType) + "#" + method.getSimpleName());
+        for (AnnotationMirror argument : annotationList(command, "args"))
+            writeArgument(out, "withArg", argument, classValue(argument, "clazz", method), method);
+        writeParameterArguments(out, "withArg", method);
+        writeBody(out, method);
+        writePredicates(out, method, declaringType);
+        writeAliases(out, command);
+
+        methodCommands.append("\n")
+                      .append("    private static CommandBuilder ").append(methodName).append("(final CommandInstanceFactory instances)\n")
+                      .append("    {\n")
+                      .append(out)
+                      .append(INDENT).append("return command;\n")
+                      .append("    }\n");
+    }
+
+    private void writeProperties(StringBuilder out, AnnotationMirror command, String name, String source)
+    {
+        AnnotationMirror permission = (AnnotationMirror) value(command, "permission");
+        VariableElement mode = (VariableElement) value(permission, "mode");
+        out.append(INDENT).append("CommandBuilder command = new CommandBuilder(").append(literal(name)).append(")\n")
+           .append(INDENT).append("        .description(").append(literal(stringValue(command, "description"))).append(")\n")
+           .append(INDENT).append("        .playerOnly(").append(value(command, "playerOnly")).append(")\n")
+           .append(INDENT).append("        .permission(").append(literal(stringValue(permission, "value"))).append(")\n")
+           .append(INDENT).append("        .setAbsolutePermission(").append(value(permission, "absolute")).append(")\n")
+           .append(INDENT).append("        .setPermissionMode(Perm.Mode.").append(mode.getSimpleName()).append(")\n")
+           .append(INDENT).append("        .setAsync(").append(value(command, "isAsync")).append(")\n")
+           .append(INDENT).append("        .source(").append(literal(source)).append(");\n");
+        AnnotationMirror rateLimit = (AnnotationMirror) value(command, "rateLimit");
+        int permits = intValue(rateLimit, "permits");
+        if (permits > 0)
+            out.append(INDENT).append("command.rateLimit(").append(permits).append(", java.time.Duration.ofMillis(")
+               .append(value(rateLimit, "periodMillis")).append("L));\n");
+    }
+
+    private void writeAliases(StringBuilder out, AnnotationMirror command)
+    {
+        for (AnnotationValue alias : listValue(command, "alias"))
+            out.append(INDENT).append("command.alias(").append(literal((String) alias.getValue())).append(");\n");
+    }
+
+    /**
+     * Declare the arguments annotated on method parameters
+     */
+    private void writeParameterArguments(StringBuilder out, String builderMethod, ExecutableElement method) throws InvalidCommandException
+    {
+        for (VariableElement parameter : method.getParameters())
+        {
+            AnnotationMirror argument = getAnnotation(parameter, ARGUMENT);
+            if (argument == null)
+                continue;
+            TypeMirror argumentType = classValue(argument, "clazz", parameter);
+            if (isType(argumentType, ARGUMENT_NONE))
+            {
+                argumentType = parameter.asType();
+                TypeMirror commandArgument = types.erasure(elements.getTypeElement(COMMAND_ARGUMENT).asType());
+                if (!types.isAssignable(types.erasure(argumentType), commandArgument))
+                    throw new InvalidCommandException(argumentType + " is not a valid argument type", parameter);
+            }
+            writeArgument(out, builderMethod, argument, argumentType, parameter);
+        }
+    }
+
+    private void writeArgument(StringBuilder out, String builderMethod, AnnotationMirror argument, TypeMirror argumentType,
+                               Element element) throws InvalidCommandException
+    {
+        if (isType(argumentType, ARGUMENT_NONE))
+            throw new InvalidCommandException("Argument " + stringValue(argument, "value") + " has no argument class", element);
+        out.append(INDENT).append("command.").append(builderMethod).append("(")
+           .append(types.erasure(argumentType)).append(".class, ")
+           .append(literal(stringValue(argument, "value"))).append(", ")
+           .append(value(argument, "optional")).append(", ")
+           .append(literal(stringValue(argument, "def"))).append(");\n");
+    }
+
+    private void writePredicates(StringBuilder out, Element annotated, TypeElement lookupType) throws InvalidCommandException
+    {
+        List<AnnotationMirror> predicates = new ArrayList<>();
+        AnnotationMirror single = getAnnotation(annotated, COMMAND_PREDICATE);
+        if (single != null)
+            predicates.add(single);
+        AnnotationMirror container = getAnnotation(annotated, PREDICATES);
+        if (container != null)
+            predicates.addAll(annotationList(container, "value"));
+
+        for (AnnotationMirror predicate : predicates)
+        {
+            String predicateName = stringValue(predicate, "value");
+            ExecutableElement method = findPredicate(lookupType, predicateName);
+            if (method == null)
+                throw new InvalidCommandException("No predicate method found with name " + predicateName, annotated);
+            if (method.getReturnType().getKind() != TypeKind.BOOLEAN)
+                throw new InvalidCommandException("Predicate " + predicateName + " should have boolean return type", method);
+            checkAccessible(method);
+            if ((Boolean) value(predicate, "cached"))
+                out.append(INDENT).append("command.predicate(PredicateDefinition.cached(").append(literal(cacheKey(method)))
+                   .append(", env -> ").append(invocation(method, false))
+                   .append(", ").append(value(predicate, "strict")).append(", ").append(ttl(predicate)).append("));\n");
+            else
+                out.append(INDENT).append("command.predicate(new PredicateDefinition(env -> ").append(invocation(method, false))
+                   .append(", ").append(value(predicate, "strict")).append("));\n");
+        }
+    }
+
+    /**
+     * Key of the cached results of a method, as computed by the runtime reader
+     */
+    private String cacheKey(ExecutableElement method) throws InvalidCommandException
+    {
+        for (VariableElement parameter : method.getParameters())
+        {
+            if (getAnnotation(parameter, ARGUMENT) != null)
+                throw new InvalidCommandException("Cached method " + method.getSimpleName() + " cannot take arguments, its result would be reused for other values", parameter);
+        }
+        return elements.getBinaryName((TypeElement) method.getEnclosingElement()) + "#" + method.getSimpleName();
+    }
+
+    private String ttl(AnnotationMirror annotation)
+    {
+        return "java.time.Duration.ofMillis(" + value(annotation, "cacheMillis") + "L)";
+    }
+
+    /**
+     * Find a predicate method by name in a type or its enclosing types. As with the runtime reader, methods of
+     * enclosing types take precedence.
+     */
+    private ExecutableElement findPredicate(TypeElement lookupType, String name)
+    {
+        ExecutableElement found = null;
+        for (Element current = lookupType; current instanceof TypeElement; current = current.getEnclosingElement())
+        {
+            for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements()))
+            {
+                if (method.getSimpleName().contentEquals(name))
+                {
+                    found = method;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Methods returning a CompletionStage become future bodies, as done by the runtime reader
+     */
+    private void writeBody(StringBuilder out, ExecutableElement method) throws InvalidCommandException
+    {
+        TypeElement completionStage = elements.getTypeElement("java.util.concurrent.CompletionStage");
+        if (completionStage != null
+                && types.isAssignable(types.erasure(method.getReturnType()), types.erasure(completionStage.asType())))
+            out.append(INDENT).append("command.commandFuture(env -> ").append(invocation(method, true)).append(");\n");
+        else
+            out.append(INDENT).append("command.command(env -> ").append(invocation(method, false)).append(");\n");
+    }
+
+    /**
+     * Expression invoking a command method, with its parameters injected from the environment {@code env}
+     *
+     * @param asValue If true, the expression evaluates to an Object, null for void methods
+     */
+    private String invocation(ExecutableElement method, boolean asValue) throws InvalidCommandException
+    {
+        checkAccessible(method);
+        TypeElement declaringType = (TypeElement) method.getEnclosingElement();
+        String typeName = types.erasure(declaringType.asType()).toString();
+        StringBuilder call = new StringBuilder();
+        if (method.getModifiers().contains(Modifier.STATIC))
+            call.append(typeName);
+        else
+            call.append("((").append(typeName).append(") instances.getClassInstance(").append(typeName).append(".class))");
+        call.append('.').append(method.getSimpleName()).append('(');
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++)
+        {
+            if (i > 0)
+                call.append(", ");
+            call.append(parameterValue(parameters.get(i)));
+        }
+        call.append(')');
+
+        boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+        boolean throwsChecked = method.getThrownTypes().stream().anyMatch(this::isChecked);
+        if (!throwsChecked && !(asValue && isVoid))
+            return call.toString();
+
+        StringBuilder block = new StringBuilder("{ ");
+        if (throwsChecked)
+            block.append("try { ");
+        if (asValue && !isVoid)
+            block.append("return ").append(call).append("; ");
+        else
+            block.append(call).append("; ");
+        if (throwsChecked)
+            block.append("} catch (RuntimeException | Error e) { throw e; } catch (Throwable e) { throw new CommandExecutionException(e); } ");
+        if (asValue && isVoid)
+            block.append("return null; ");
+        return block.append('}').toString();
+    }
+
+    /**
+     * Getter of the environment reading a primitive value without boxing, null for other types
+     */
+    private static String primitiveGetter(TypeMirror type)
+    {
+        switch (type.getKind())
+        {
+            case INT:
+                return "getInt";
+            case LONG:
+                return "getLong";
+            case FLOAT:
+                return "getFloat";
+            case DOUBLE:
+                return "getDouble";
+            case BOOLEAN:
+                return "getBoolean";
+            default:
+                return null;
+        }
+    }
+
+    private String parameterValue(VariableElement parameter)
+    {
+        TypeMirror parameterType = types.erasure(parameter.asType());
+        AnnotationMirror argument = getAnnotation(parameter, ARGUMENT);
+        AnnotationMirror env = getAnnotation(parameter, ENV);
+        if (argument != null || env != null)
+        {
+            String name = literal(argument != null ? stringValue(argument, "value") : stringValue(env, "key"));
+            String primitiveGetter = primitiveGetter(parameterType);
+            if (primitiveGetter != null)
+                return "env." + primitiveGetter + "(" + name + ")";
+            return "env.get(" + name + ", " + parameterType + ".class)";
+        }
+        if (isType(parameterType, COMMAND_ENVIRONMENT))
+            return "env";
+        if (isType(parameterType, COMMAND_SENDER))
+            return "env.getSender()";
+        if (isType(parameterType, PLAYER))
+            return "env.getSenderAsPlayer()";
+        switch (parameterType.getKind())
+        {
+            case BOOLEAN:
+                return "false";
+            case BYTE:
+            case SHORT:
+            case CHAR:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return "(" + parameterType + ") 0";
+            default:
+                return "(" + parameterType + ") null";
+        }
+    }
+
+    private boolean isChecked(TypeMirror thrown)
+    {
+        TypeMirror runtimeException = elements.getTypeElement(RuntimeException.class.getName()).asType();
+        TypeMirror error = elements.getTypeElement(Error.class.getName()).asType();
+        return !types.isAssignable(thrown, runtimeException) && !types.isAssignable(thrown, error);
+    }
+
+    private void checkAccessible(Element element) throws InvalidCommandException
+    {
+        for (Element current = element; current instanceof TypeElement || current instanceof ExecutableElement;
+             current = current.getEnclosingElement())
+        {
+            if (current.getModifiers().contains(Modifier.PRIVATE))
+                throw new InvalidCommandException(current.getSimpleName() + " must not be private to be used in a generated command tree", current);
+        }
+    }
+
+    /**
+     * Same as the runtime reader: strip the "Command" suffix, and lower the first character
+     */
+    private static String readName(String originalName)
+    {
+        if (originalName.endsWith("Command"))
+            originalName = originalName.substring(0, originalName.lastIndexOf("Command"));
+        return originalName.substring(0, 1).toLowerCase() + originalName.substring(1);
+    }
+
+    private boolean isType(TypeMirror typeMirror, String qualifiedName)
+    {
+        TypeElement expected = elements.getTypeElement(qualifiedName);
+        return expected != null && types.isSameType(types.erasure(typeMirror), types.erasure(expected.asType()));
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String annotationName)
+    {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors())
+        {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName))
+                return mirror;
+        }
+        return null;
+    }
+
+    private Object value(AnnotationMirror annotation, String name)
+    {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values = elements.getElementValuesWithDefaults(annotation);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet())
+        {
+            if (entry.getKey().getSimpleName().contentEquals(name))
+                return entry.getValue().getValue();
+        }
+        throw new IllegalArgumentException("No value " + name + " in " + annotation);
+    }
+
+    private String stringValue(AnnotationMirror annotation, String name)
+    {
+        return (String) value(annotation, name);
+    }
+
+    private int intValue(AnnotationMirror annotation, String name)
+    {
+        return (Integer) value(annotation, name);
+    }
+
+    private TypeMirror classValue(AnnotationMirror annotation, String name, Element element) throws InvalidCommandException
+    {
+        Object value = value(annotation, name);
+        // Unresolved classes are given as strings, the compiler already reports them
+        if (!(value instanceof TypeMirror typeMirror))
+            throw new InvalidCommandException("Cannot resolve class " + value, element);
+        return typeMirror;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<? extends AnnotationValue> listValue(AnnotationMirror annotation, String name)
+    {
+        return (List<? extends AnnotationValue>) value(annotation, name);
+    }
+
+    private List<AnnotationMirror> annotationList(AnnotationMirror annotation, String name)
+    {
+        List<AnnotationMirror> res = new ArrayList<>();
+        for (AnnotationValue element : listValue(annotation, name))
+            res.add((AnnotationMirror) element.getValue());
+        return res;
+    }
+
+    private List<TypeMirror> classList(AnnotationMirror annotation, String name)
+    {
+        List<TypeMirror> res = new ArrayList<>();
+        for (AnnotationValue element : listValue(annotation, name))
+            res.add((DeclaredType) element.getValue());
+        return res;
+    }
+
+    private String literal(String value)
+    {
+        return elements.getConstantExpression(value);
+    }
+
+    private record SubCommand(int priority, String expression) {
+    }
+
+    /**
+     * Invalid command declaration, reported as a compilation error
+     */
+    static final class InvalidCommandException extends Exception {
+        private final transient Element element;
+
+        InvalidCommandException(String message, Element element)
+        {
+            super(message);
+            this.element = element;
+        }
+
+        Element getElement()
+        {
+            return element;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package onl.tesseract.commandBuilder.processor;
+
+import onl.tesseract.commandBuilder.CommandDefinition;
+import onl.tesseract.commandBuilder.GeneratedCommandTree;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CommandTreeProcessorTest {
+
+    @TempDir
+    Path output;
+
+    private static final String SAMPLE = """
+            package sample;
+
+            import onl.tesseract.commandBuilder.CommandEnvironment;
+            import onl.tesseract.commandBuilder.annotation.Argument;
+            import onl.tesseract.commandBuilder.annotation.Command;
+            import onl.tesseract.commandBuilder.annotation.CommandBody;
+            import onl.tesseract.commandBuilder.annotation.CommandPredicate;
+            import onl.tesseract.commandBuilder.annotation.Perm;
+            import onl.tesseract.commandBuilder.annotation.RateLimit;
+            import onl.tesseract.commandBuilder.annotation.EnvInsert;
+            import onl.tesseract.commandBuilder.CommandArgument;
+            import onl.tesseract.commandBuilder.CommandArgumentBuilderSteps;
+            import org.bukkit.command.CommandSender;
+            import org.jetbrains.annotations.NotNull;
+
+            @Command(name = "sample", permission = @Perm("sample"))
+            public class SampleCommand {
+                public static java.util.concurrent.atomic.AtomicInteger sum;
+
+                @CommandBody
+                void body(CommandSender sender) {}
+
+                @Command(helpPriority = 60)
+                void add(@Argument(value = "n", clazz = NumberArgument.class) int n, CommandEnvironment env) {
+                    sum.addAndGet(n + env.get("bonus", Integer.class));
+                }
+
+                @Command(helpPriority = 40)
+                @CommandPredicate(value = "allowed", cached = true)
+                static void first() throws Exception {}
+
+                @EnvInsert(value = "bonus", cached = true, cacheMillis = 1000)
+                int bonus() { return 10; }
+
+                boolean allowed() { return true; }
+
+                public static class NumberArgument extends CommandArgument<Integer> {
+                    public NumberArgument(String name) { super(name); }
+
+                    @Override
+                    public void define(CommandArgumentBuilderSteps.Parser<Integer> builder) {
+                        builder.parser((input, env) -> Integer.parseInt(input))
+                               .tabCompleter((input, env) -> java.util.List.of());
+                    }
+                }
+
+                @Command
+                public static class NestedCommand {
+                    @Command(rateLimit = @RateLimit(permits = 2, periodMillis = 5000))
+                    void run() {}
+                }
+            }
+            """;
+
+    /**
+     * Class path of the library and its API dependencies, wherever the test runner loaded them from
+     */
+    private static String classPath() throws IOException
+    {
+        StringJoiner joiner = new StringJoiner(File.pathSeparator);
+        joiner.add(System.getProperty("java.class.path"));
+        for (Class<?> clazz : List.of(CommandDefinition.class, CommandSender.class, NotNull.class))
+        {
+            try
+            {
+                joiner.add(Path.of(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+            }
+            catch (URISyntaxException e)
+            {
+                throw new IOException(e);
+            }
+        }
+        return joiner.toString();
+    }
+
+    private List<Diagnostic<? extends JavaFileObject>> compile(String className, String source) throws IOException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null))
+        {
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, List.of(output.toFile()));
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, List.of(output.toFile()));
+            JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".java"),
+                    JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors)
+                {
+                    return source;
+                }
+            };
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    List.of("-classpath", classPath()), null, List.of(file));
+            task.setProcessors(List.of(new CommandTreeProcessor()));
+            task.call();
+        }
+        return diagnostics.getDiagnostics();
+    }
+
+    private static boolean hasError(List<Diagnostic<? extends JavaFileObject>> diagnostics)
+    {
+        return diagnostics.stream().anyMatch(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR);
+    }
+
+    @Test
+    void generatesCommandTree() throws Exception
+    {
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile("sample.SampleCommand", SAMPLE);
+
+        assertFalse(hasError(diagnostics), diagnostics::toString);
+        assertTrue(Files.exists(output.resolve("sample/SampleCommand_CommandTree.java")));
+        assertTrue(Files.exists(output.resolve("sample/SampleCommand_NestedCommand_CommandTree.java")));
+        // Primitive parameters are read without boxing
+        assertTrue(Files.readString(output.resolve("sample/SampleCommand_CommandTree.java")).contains("env.getInt(\"n\")"));
+        assertTrue(Files.readString(output.resolve("sample/SampleCommand_CommandTree.java"))
+                        .contains("PredicateDefinition.cached(\"sample.SampleCommand#allowed\""));
+        assertTrue(Files.readString(output.resolve("sample/SampleCommand_NestedCommand_CommandTree.java"))
+                        .contains("command.rateLimit(2, java.time.Duration.ofMillis(5000L));"));
+
+        try (URLClassLoader loader = new URLClassLoader(new java.net.URL[]{output.toUri().toURL()}, getClass().getClassLoader()))
+        {
+            Class<?> commandClass = loader.loadClass("sample.SampleCommand");
+            AtomicInteger sum = new AtomicInteger();
+            commandClass.getField("sum").set(null, sum);
+            Object instance = commandClass.getDeclaredConstructor().newInstance();
+
+            GeneratedCommandTree tree = GeneratedCommandTree.find(commandClass);
+            assertNotNull(tree);
+            CommandDefinition command = tree.builder(clazz -> instance).build(null);
+
+            assertEquals("sample", command.getName());
+            CommandSender sender = mock(CommandSender.class);
+            when(sender.isOp()).thenReturn(true);
+            // Subcommands sorted by help priority
+            String page = String.join("\n", command.helpGetPage(sender, 0));
+            assertTrue(page.indexOf(" first") < page.indexOf(" nested"));
+            assertTrue(page.indexOf(" nested") < page.indexOf(" add"));
+
+            command.execute(sender, new String[]{"add", "5"});
+            assertEquals(15, sum.get());
+        }
+    }
+
+    @Test
+    void missingPredicate_CompilationError() throws Exception
+    {
+        String source = """
+                package sample;
+
+                import onl.tesseract.commandBuilder.annotation.Command;
+                import onl.tesseract.commandBuilder.annotation.CommandPredicate;
+
+                @Command
+                @CommandPredicate("missing")
+                public class BrokenCommand {
+                }
+                """;
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile("sample.BrokenCommand", source);
+
+        assertTrue(diagnostics.stream().anyMatch(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR
+                && diagnostic.getMessage(null).contains("No predicate method found with name missing")), diagnostics::toString);
+    }
+
+    @Test
+    void cachedPredicateWithArgument_CompilationError() throws Exception
+    {
+        String source = """
+                package sample;
+
+                import onl.tesseract.commandBuilder.IntegerArgument;
+                import onl.tesseract.commandBuilder.annotation.Argument;
+                import onl.tesseract.commandBuilder.annotation.Command;
+                import onl.tesseract.commandBuilder.annotation.CommandPredicate;
+
+                @Command
+                @CommandPredicate(value = "allowed", cached = true)
+                public class CachedCommand {
+                    boolean allowed(@Argument(value = "page", clazz = IntegerArgument.class) int page) { return true; }
+                }
+                """;
+
+        List<Diagnostic<? extends JavaFileObject>> diagnostics = compile("sample.CachedCommand", source);
+
+        assertTrue(diagnostics.stream().anyMatch(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR
+                && diagnostic.getMessage(null).contains("Cached method allowed cannot take arguments")), diagnostics::toString);
+    }
+}
@@ -4,6 +4,7 @@ import onl.tesseract.commandBuilder.annotation.Argument;
 import onl.tesseract.commandBuilder.annotation.Command;
 import onl.tesseract.commandBuilder.annotation.CommandPredicate;
 import onl.tesseract.commandBuilder.annotation.Perm;
+import onl.tesseract.commandBuilder.annotation.RateLimit;
 import onl.tesseract.commandBuilder.exception.CommandBuildException;
 import onl.tesseract.commandBuilder.exception.CommandExecutionException;
 import onl.tesseract.commandBuilder.exception.InvalidArgumentTypeException;
@@ -11,17 +12,24 @@ import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 abstract class AnnotationReader {
     protected final Command commandAnnotation;
     protected final Object instance;
     protected final CommandInstanceFactory instanceFactory;
+    /**
+     * Invokers of the body method, shared by {@link #readCommandBody()} and {@link #readFutureBody()}
+     */
+    private final Map<Method, MethodInvoker> bodyInvokers = new HashMap<>();
 
     protected AnnotationReader(Object instance, final Command commandAnnotation,
                                final CommandInstanceFactory instanceFactory)
@@ -33,6 +41,11 @@ abstract class AnnotationReader {
 
     abstract String readName();
 
+    /**
+     * Describe the code declaring the command, for diagnostics
+     */
+    abstract String readSource();
+
     String[] readAliases()
     {
         return commandAnnotation.alias();
@@ -57,6 +70,11 @@ abstract class AnnotationReader {
         return commandAnnotation.permission();
     }
 
+    RateLimit readRateLimit()
+    {
+        return commandAnnotation.rateLimit();
+    }
+
     boolean readPlayerOnly()
     {
         return commandAnnotation.playerOnly();
@@ -68,25 +86,38 @@ abstract class AnnotationReader {
         List<CommandArgumentDefinition<?>> res = new ArrayList<>();
 
         for (Argument argAnnotation : args)
-        {
-            try
-            {
-                CommandArgumentBuilder<?> argBuilder = CommandArgumentBuilder.getBuilderNsm(argAnnotation.clazz(), argAnnotation.value());
-                argBuilder.setOptional(argAnnotation.optional());
-                argBuilder.setDefaultInput(argAnnotation.def());
-                res.add(argBuilder.build());
-            }
-            catch (Exception e)
-            {
-                throw new CommandBuildException(e);
-            }
-        }
+            res.add(CommandArgumentBuilder.define(argAnnotation.clazz(), argAnnotation.value(), argAnnotation.optional(), argAnnotation.def()));
         return res;
     }
 
     @Nullable
     abstract Consumer<CommandEnvironment> readCommandBody();
 
+    /**
+     * Read the body of a command whose method returns a {@link CompletionStage}
+     *
+     * @return Null if the command has no such body
+     */
+    @Nullable
+    abstract Function<CommandEnvironment, CompletionStage<?>> readFutureBody();
+
+    @Nullable
+    protected Function<CommandEnvironment, CompletionStage<?>> readFutureBody(final Method method)
+    {
+        if (!CompletionStage.class.isAssignableFrom(method.getReturnType()))
+            return null;
+        MethodInvoker invoker = bodyInvoker(method);
+        return env -> (CompletionStage<?>) invoker.invoke(env);
+    }
+
+    /**
+     * Invoker of a body method, compiled once for both of its bodies
+     */
+    protected MethodInvoker bodyInvoker(final Method method)
+    {
+        return bodyInvokers.computeIfAbsent(method, key -> new MethodInvoker(key, instanceFactory));
+    }
+
     abstract List<PredicateDefinition> readPredicates();
 
     abstract List<CommandArgumentDefinition<?>> readBodyArguments();
@@ -104,17 +135,35 @@ abstract class AnnotationReader {
                 throw new CommandBuildException("No predicate method found with name " + predicateName);
             if (method.getReturnType() != boolean.class)
                 throw new CommandBuildException("Predicate " + predicateName + " should have boolean return type");
-            PredicateDefinition definition = new PredicateDefinition(env -> {
-                Object invoke = new MethodInvoker(method, instanceFactory.getClassInstance(method.getDeclaringClass())).invoke(env);
+            MethodInvoker invoker = new MethodInvoker(method, instanceFactory);
+            Predicate<CommandEnvironment> predicate = env -> {
+                Object invoke = invoker.invoke(env);
                 if (!(invoke instanceof Boolean))
                     throw new CommandExecutionException("Predicate function does not return a boolean: " + method.getName());
                 return (boolean) invoke;
-            }, annotation.strict());
-            res.add(definition);
+            };
+            res.add(annotation.cached()
+                    ? PredicateDefinition.cached(cacheKey(method), predicate, annotation.strict(), Duration.ofMillis(annotation.cacheMillis()))
+                    : new PredicateDefinition(predicate, annotation.strict()));
         }
         return res;
     }
 
+    /**
+     * Key of the cached results of a method, shared by all the commands using it
+     *
+     * @throws CommandBuildException If the method takes arguments, whose values the key does not account for
+     */
+    static String cacheKey(Method method) throws CommandBuildException
+    {
+        for (Parameter parameter : method.getParameters())
+        {
+            if (parameter.isAnnotationPresent(Argument.class))
+                throw new CommandBuildException("Cached method " + method.getName() + " cannot take arguments, its result would be reused for other values");
+        }
+        return method.getDeclaringClass().getName() + "#" + method.getName();
+    }
+
     private Map<String, Method> getNamedMethods(Class<?> clazz)
     {
         Map<String, Method> map = new HashMap<>();
@@ -154,17 +203,7 @@ abstract class AnnotationReader {
                 type = (Class<? extends CommandArgument<?>>) parameter.getType();
             }
 
-            try
-            {
-                CommandArgumentBuilder<?> builder = CommandArgumentBuilder.getBuilderNsm(type, argAnnotation.value());
-                builder.setOptional(argAnnotation.optional());
-                builder.setDefaultInput(argAnnotation.def());
-                args.add(builder.build());
-            }
-            catch (Exception e)
-            {
-                throw new CommandBuildException(e);
-            }
+            args.add(CommandArgumentBuilder.define(type, argAnnotation.value(), argAnnotation.optional(), argAnnotation.def()));
         }
         return args;
     }
@@ -0,0 +1,43 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the bodies of async commands. By default, async commands run on the Bukkit scheduler of the plugin owning the
+ * command.
+ *
+ * @see CommandBuilder#asyncExecutor(AsyncCommandExecutor)
+ * @see ServerThread to call the Bukkit API from an async command
+ */
+@FunctionalInterface
+public interface AsyncCommandExecutor {
+
+    void execute(@NotNull Runnable task);
+
+    /**
+     * Run each command on a new virtual thread. Suited to commands waiting on I/O, such as database queries, which
+     * would otherwise occupy the threads of the Bukkit async pool.
+     */
+    @NotNull
+    static AsyncCommandExecutor virtualThreads()
+    {
+        ThreadFactory factory = Thread.ofVirtual().name("command-", 0).factory();
+        return task -> factory.newThread(task).start();
+    }
+
+    @NotNull
+    static AsyncCommandExecutor of(@NotNull final Executor executor)
+    {
+        return executor::execute;
+    }
+
+    @NotNull
+    static AsyncCommandExecutor bukkitScheduler(@NotNull final Plugin plugin)
+    {
+        return task -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task);
+    }
+}
@@ -0,0 +1,138 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Predicate or env inserter function whose result is computed once per execution or tab completion. Functions with the
+ * same key share their results, such as the membership check of every subcommand of a guild command, so that it runs
+ * once per keystroke instead of once per visible subcommand.
+ * <br/>
+ * With a positive time to live, results are also reused for the same player during that time. The function must then
+ * only depend on the sender. Results of other senders, such as the console, are only reused in the same execution.
+ *
+ * @see PredicateDefinition#cached(String, java.util.function.Predicate, boolean, Duration)
+ */
+public final class CachedResult<T> implements Function<CommandEnvironment, T> {
+    private final String key;
+    private final Function<CommandEnvironment, ? extends T> function;
+    private final long ttlNanos;
+    /**
+     * Results by player UUID, dropped once expired
+     */
+    @Nullable
+    private final Map<UUID, Entry<T>> byPlayer;
+    /**
+     * Number of results above which the expired ones are dropped
+     */
+    private volatile int sweepThreshold = 64;
+
+    /**
+     * @param key Key shared by the functions computing the same result, such as "GuildCommand#isMember"
+     * @param ttl Time during which results are reused for the same player. Zero to only reuse them in the same
+     * execution.
+     */
+    public CachedResult(@NotNull final String key, @NotNull final Function<CommandEnvironment, ? extends T> function,
+                        @NotNull final Duration ttl)
+    {
+        if (ttl.isNegative())
+            throw new IllegalArgumentException("ttl must not be negative");
+        this.key = key;
+        this.function = function;
+        this.ttlNanos = ttl.toNanos();
+        this.byPlayer = ttlNanos > 0 ? new ConcurrentHashMap<>() : null;
+    }
+
+    @Override
+    public T apply(final CommandEnvironment env)
+    {
+        long now = byPlayer != null ? System.nanoTime() : 0;
+        Object memo = env.getCachedResult(key);
+        if (memo != CommandEnvironment.NO_RESULT)
+        {
+            // Computed by another function with the same key
+            remember(env, (T) memo, now);
+            return (T) memo;
+        }
+        UUID player = byPlayer != null ? playerOf(env) : null;
+        if (player != null)
+        {
+            Entry<T> entry = byPlayer.get(player);
+            if (entry != null && entry.expiresAt - now > 0)
+            {
+                env.putCachedResult(key, entry.value);
+                return entry.value;
+            }
+            if (entry != null)
+                byPlayer.remove(player, entry);
+        }
+        T value = function.apply(env);
+        env.putCachedResult(key, value);
+        remember(env, value, now);
+        return value;
+    }
+
+    private void remember(CommandEnvironment env, T value, long now)
+    {
+        UUID player = byPlayer != null ? playerOf(env) : null;
+        if (player == null)
+            return;
+        Entry<T> entry = byPlayer.get(player);
+        if (entry != null && entry.expiresAt - now > 0)
+            return;
+        byPlayer.put(player, new Entry<>(value, now + ttlNanos));
+        if (byPlayer.size() > sweepThreshold)
+        {
+            byPlayer.values().removeIf(stored -> stored.expiresAt - now <= 0);
+            sweepThreshold = Math.max(64, byPlayer.size() * 2);
+        }
+    }
+
+    @Nullable
+    private static UUID playerOf(CommandEnvironment env)
+    {
+        return env.getSender() instanceof Player player ? player.getUniqueId() : null;
+    }
+
+    /**
+     * Forget the results of a sender, such as when they join or leave a guild
+     */
+    public void invalidate(@NotNull final CommandSender sender)
+    {
+        if (sender instanceof Player player)
+            invalidate(player.getUniqueId());
+    }
+
+    /**
+     * Forget the results of a player
+     */
+    public void invalidate(@NotNull final UUID player)
+    {
+        if (byPlayer != null)
+            byPlayer.remove(player);
+    }
+
+    /**
+     * Number of results kept for players, including expired ones not dropped yet
+     */
+    int size()
+    {
+        return byPlayer == null ? 0 : byPlayer.size();
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    private record Entry<T>(T value, long expiresAt) {
+    }
+}
@@ -7,23 +7,26 @@ import onl.tesseract.commandBuilder.annotation.EnvInsert;
 import onl.tesseract.commandBuilder.exception.CommandBuildException;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 final class ClassAnnotationReader extends AnnotationReader {
 
     private final Class<?> clazz;
-    private final CommandInstanceProvider commandInstanceProvider;
+    private final CommandBuilderProvider provider;
 
-    ClassAnnotationReader(final Object instance, CommandInstanceFactory instanceFactory, CommandInstanceProvider commandInstanceProvider)
+    ClassAnnotationReader(final Object instance, CommandBuilderProvider provider)
     {
-        super(instance, instance.getClass().getAnnotation(Command.class), instanceFactory);
+        super(instance, instance.getClass().getAnnotation(Command.class), provider);
         this.clazz = instance.getClass();
-        this.commandInstanceProvider = commandInstanceProvider;
+        this.provider = provider;
         if (commandAnnotation == null)
             throw new IllegalStateException(clazz.getName() + " should be annotated with @Command");
     }
@@ -36,6 +39,17 @@ final class ClassAnnotationReader extends AnnotationReader {
                : name;
     }
 
+    @Override
+    String readSource()
+    {
+        for (final Method method : clazz.getDeclaredMethods())
+        {
+            if (method.isAnnotationPresent(CommandBody.class))
+                return clazz.getName() + "#" + method.getName();
+        }
+        return clazz.getName();
+    }
+
     @Nullable
     @Override
     Consumer<CommandEnvironment> readCommandBody()
@@ -45,7 +59,20 @@ final class ClassAnnotationReader extends AnnotationReader {
             CommandBody annotation = method.getAnnotation(CommandBody.class);
             if (annotation == null)
                 continue;
-            return env -> new MethodInvoker(method, instanceFactory.getClassInstance(method.getDeclaringClass())).invoke(env);
+            MethodInvoker invoker = bodyInvoker(method);
+            return invoker::invoke;
+        }
+        return null;
+    }
+
+    @Nullable
+    @Override
+    Function<CommandEnvironment, CompletionStage<?>> readFutureBody()
+    {
+        for (final Method method : clazz.getDeclaredMethods())
+        {
+            if (method.isAnnotationPresent(CommandBody.class))
+                return readFutureBody(method);
         }
         return null;
     }
@@ -63,9 +90,13 @@ final class ClassAnnotationReader extends AnnotationReader {
         return new ArrayList<>();
     }
 
+    /**
+     * Read the subcommands declared as methods, inner classes and external classes, sorted by help priority. If the
+     * provider is parallel, subcommands are read concurrently.
+     */
     List<CommandBuilder> readSubCommands()
     {
-        List<Pair<CommandBuilder, Integer>> res = new ArrayList<>();
+        List<Supplier<Pair<CommandBuilder, Integer>>> readers = new ArrayList<>();
         Method[] methods = clazz.getDeclaredMethods();
         for (final Method method : methods)
         {
@@ -73,22 +104,22 @@ final class ClassAnnotationReader extends AnnotationReader {
             if (annotation == null)
                 continue;
             method.setAccessible(true);
-            res.add(new Pair<>(new CommandBuilderProvider(commandInstanceProvider).provideFor(instance, method), annotation.helpPriority()));
+            readers.add(() -> new Pair<>(provider.provideFor(instance, method), annotation.helpPriority()));
         }
-        res.addAll(readClassCommands(clazz.getDeclaredClasses()));
+        for (final Class<?> declaredClass : clazz.getDeclaredClasses())
+            readers.add(() -> readClassCommand(declaredClass));
         // Read external classes
-        res.addAll(readClassCommands(commandAnnotation.subCommands()));
-        res.sort(Comparator.comparingInt(Pair::getRight));
-        return res.stream()
-                .map(Pair::getLeft)
-                .collect(Collectors.toList());
-    }
+        for (final Class<?> subCommandClass : commandAnnotation.subCommands())
+            readers.add(() -> readClassCommand(subCommandClass));
 
-    private List<Pair<CommandBuilder, Integer>> readClassCommands(Class<?>[] classes) throws CommandBuildException
-    {
-        return Arrays.stream(classes)
-                     .map(this::readClassCommand)
+        Stream<Supplier<Pair<CommandBuilder, Integer>>> stream = provider.isParallel()
+                                                                 ? readers.parallelStream()
+                                                                 : readers.stream();
+        // Encounter order is kept, and the sort is stable: the resulting order does not depend on scheduling
+        return stream.map(Supplier::get)
                      .filter(Objects::nonNull)
+                     .sorted(Comparator.comparingInt(Pair::getRight))
+                     .map(Pair::getLeft)
                      .collect(Collectors.toList());
     }
 
@@ -98,18 +129,8 @@ final class ClassAnnotationReader extends AnnotationReader {
         Command annotation = clazz.getAnnotation(Command.class);
         if (annotation == null)
             return null;
-        try
-        {
-            Object instance = commandInstanceProvider.provideInstance(clazz);
-            if (instance == null) {
-                instance = clazz.getDeclaredConstructor().newInstance();
-            }
-            return new Pair<>(new CommandBuilderProvider(commandInstanceProvider).provideForClass(instance), annotation.helpPriority());
-        }
-        catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e)
-        {
-            throw new CommandBuildException(e);
-        }
+        Object instance = provider.provideInstance(clazz);
+        return new Pair<>(provider.provideForClass(instance), annotation.helpPriority());
     }
 
     @Override
@@ -129,8 +150,11 @@ final class ClassAnnotationReader extends AnnotationReader {
             if (annotation == null)
                 continue;
             String name = annotation.value();
-            res.add(new Pair<>(name, env -> new MethodInvoker(method, instanceFactory.getClassInstance(method.getDeclaringClass()))
-                    .invoke(env)));
+            MethodInvoker invoker = new MethodInvoker(method, instanceFactory);
+            Function<CommandEnvironment, Object> function = invoker::invoke;
+            if (annotation.cached())
+                function = new CachedResult<>(cacheKey(method), function, Duration.ofMillis(annotation.cacheMillis()));
+            res.add(new Pair<>(name, function));
         }
         return res;
     }
@@ -2,12 +2,23 @@ package onl.tesseract.commandBuilder;
 
 import lombok.Getter;
 import lombok.Setter;
+import onl.tesseract.commandBuilder.exception.CommandBuildException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
+import java.util.function.ToLongBiFunction;
 
 class CommandArgumentBuilder<T> {
 
@@ -21,7 +32,18 @@ class CommandArgumentBuilder<T> {
     @Getter
     private final ArgumentErrorHandlers errorHandlers = new ArgumentErrorHandlers();
     private BiFunction<String, CommandEnvironment, List<String>> tabCompleter;
+    @Nullable
+    private BiFunction<String, CommandEnvironment, CompletableFuture<List<String>>> asyncTabCompleter;
     private BiFunction<String, CommandEnvironment, T> parser;
+    @Nullable
+    private BiFunction<String, CommandEnvironment, CompletableFuture<T>> asyncParser;
+    @Nullable
+    private PrimitiveType primitiveType;
+    /**
+     * Parser of primitive arguments, returning the raw bits of the value
+     */
+    @Nullable
+    private ToLongBiFunction<String, CommandEnvironment> primitiveParser;
 
     public CommandArgumentBuilder(final Class<? extends CommandArgument<?>> argumentClass, @NotNull String name)
     {
@@ -31,26 +53,131 @@ class CommandArgumentBuilder<T> {
 
     public CommandArgumentDefinition<T> build()
     {
-        if (parser == null || tabCompleter == null)
+        if (parser == null || (tabCompleter == null && asyncTabCompleter == null))
             throw new IllegalStateException("Missing parser and/or tabCompleter for argument " + argumentClass.getSimpleName());
+        if (primitiveType != null)
+        {
+            // The primitive steps are available whatever the value type, so that a mismatch is only caught here
+            Class<?> valueType = resolveValueType(argumentClass);
+            if (valueType != null && valueType != primitiveType.boxedType)
+                throw new CommandBuildException("Argument " + argumentClass.getSimpleName() + " of type " + valueType.getSimpleName()
+                        + " cannot use a " + primitiveType.name().toLowerCase() + " parser");
+        }
         return new CommandArgumentDefinition<>(name,
                 argumentClass,
                 parser,
+                asyncParser,
+                primitiveType,
+                primitiveParser,
                 tabCompleter,
+                asyncTabCompleter,
+                compileFactory(argumentClass),
                 defaultInput,
                 errorHandlers,
                 optional);
     }
 
+    /**
+     * Resolve the type T of an argument class extending {@code CommandArgument<T>}
+     *
+     * @return Null if T is not a class, such as for generic argument classes
+     */
+    @Nullable
+    static Class<?> resolveValueType(final Class<?> argumentClass)
+    {
+        Map<TypeVariable<?>, Type> bindings = new HashMap<>();
+        Class<?> clazz = argumentClass;
+        while (clazz != null && clazz != CommandArgument.class)
+        {
+            if (clazz.getGenericSuperclass() instanceof ParameterizedType superType)
+            {
+                TypeVariable<?>[] parameters = ((Class<?>) superType.getRawType()).getTypeParameters();
+                Type[] arguments = superType.getActualTypeArguments();
+                for (int i = 0; i < parameters.length; i++)
+                {
+                    Type argument = arguments[i];
+                    bindings.put(parameters[i], argument instanceof TypeVariable<?> variable
+                                                ? bindings.getOrDefault(variable, variable)
+                                                : argument);
+                }
+            }
+            clazz = clazz.getSuperclass();
+        }
+        Type valueType = bindings.get(CommandArgument.class.getTypeParameters()[0]);
+        if (valueType instanceof ParameterizedType parameterized)
+            valueType = parameterized.getRawType();
+        return valueType instanceof Class<?> valueClass ? valueClass : null;
+    }
+
+    /**
+     * Resolve the (String) constructor of the argument class, as a method handle of type (String)CommandArgument
+     */
+    private static MethodHandle compileFactory(final Class<? extends CommandArgument<?>> argumentClass)
+    {
+        try
+        {
+            Constructor<? extends CommandArgument<?>> constructor = argumentClass.getDeclaredConstructor(String.class);
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor)
+                                .asType(MethodType.methodType(CommandArgument.class, String.class));
+        }
+        catch (ReflectiveOperationException | SecurityException e)
+        {
+            throw new CommandBuildException("No accessible (String) constructor for argument " + argumentClass.getSimpleName(), e);
+        }
+    }
+
     public CommandArgumentBuilder<T> setTabCompleter(final BiFunction<String, CommandEnvironment, List<String>> tabCompleter)
     {
         this.tabCompleter = tabCompleter;
+        this.asyncTabCompleter = null;
+        return this;
+    }
+
+    public CommandArgumentBuilder<T> setAsyncTabCompleter(final BiFunction<String, CommandEnvironment, CompletableFuture<List<String>>> asyncTabCompleter)
+    {
+        this.asyncTabCompleter = asyncTabCompleter;
+        this.tabCompleter = null;
         return this;
     }
 
     public CommandArgumentBuilder<T> setParser(final BiFunction<String, CommandEnvironment, T> parser)
     {
         this.parser = parser;
+        this.asyncParser = null;
+        this.primitiveType = null;
+        this.primitiveParser = null;
+        return this;
+    }
+
+    /**
+     * Set a non-blocking parser. Where a value is needed immediately, such as for the previous args of a tab
+     * completion, the future is never awaited, as it could block the server thread: the argument is rejected if the
+     * future is not already completed.
+     */
+    public CommandArgumentBuilder<T> setAsyncParser(final BiFunction<String, CommandEnvironment, CompletableFuture<T>> asyncParser)
+    {
+        this.asyncParser = asyncParser;
+        this.parser = (input, env) -> {
+            CompletableFuture<T> future = asyncParser.apply(input, env);
+            if (!future.isDone())
+                throw new IllegalStateException("Argument " + name + " cannot be parsed without waiting for its async parser");
+            return future.join();
+        };
+        this.primitiveType = null;
+        this.primitiveParser = null;
+        return this;
+    }
+
+    /**
+     * Set a parser of primitive values, stored without boxing. Where an object is needed, the value is boxed.
+     */
+    CommandArgumentBuilder<T> setPrimitiveParser(final PrimitiveType type, final ToLongBiFunction<String, CommandEnvironment> primitiveParser)
+    {
+        this.primitiveType = type;
+        this.primitiveParser = primitiveParser;
+        this.asyncParser = null;
+        this.parser = (input, env) -> (T) type.box(primitiveParser.applyAsLong(input, env));
         return this;
     }
 
@@ -72,6 +199,26 @@ class CommandArgumentBuilder<T> {
         return getBuilder((Class<? extends CommandArgument<T>>)clazz, label);
     }
 
+    /**
+     * Build the definition of an argument, as declared by an {@link onl.tesseract.commandBuilder.annotation.Argument}
+     * annotation
+     */
+    public static CommandArgumentDefinition<?> define(final Class<? extends CommandArgument<?>> clazz, final String name,
+                                                      final boolean optional, final String defaultInput) throws CommandBuildException
+    {
+        try
+        {
+            CommandArgumentBuilder<?> builder = getBuilderNsm(clazz, name);
+            builder.setOptional(optional);
+            builder.setDefaultInput(defaultInput);
+            return builder.build();
+        }
+        catch (Exception e)
+        {
+            throw new CommandBuildException(e);
+        }
+    }
+
     public CommandArgumentBuilder<T> setDefaultInput(final String defaultInput)
     {
         this.defaultInput = defaultInput;
@@ -3,17 +3,82 @@ package onl.tesseract.commandBuilder;
 import lombok.Getter;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToIntBiFunction;
+import java.util.function.ToLongBiFunction;
 import java.util.function.UnaryOperator;
 
 public interface CommandArgumentBuilderSteps {
 
     interface Parser<T> {
         Completer<T> parser(BiFunction<String, CommandEnvironment, T> parser);
+
+        /**
+         * Parse the argument without blocking the server thread, for example with a database query. Error handlers
+         * apply to the exception completing the future.
+         */
+        Completer<T> asyncParser(BiFunction<String, CommandEnvironment, CompletableFuture<T>> parser);
+
+        /**
+         * Parse an {@code Integer} argument without boxing. The value is stored as an int in the environment, read with
+         * {@link CommandEnvironment#getInt(String)} or injected into an int parameter.
+         * <br/>
+         * Primitive parsers are only valid for arguments of the matching type: building another argument with one
+         * fails with a {@link onl.tesseract.commandBuilder.exception.CommandBuildException}.
+         */
+        Completer<T> intParser(ToIntBiFunction<String, CommandEnvironment> parser);
+
+        /**
+         * Parse a {@code Long} argument without boxing
+         *
+         * @see #intParser(ToIntBiFunction)
+         */
+        Completer<T> longParser(ToLongBiFunction<String, CommandEnvironment> parser);
+
+        /**
+         * Parse a {@code Float} argument without boxing
+         *
+         * @see #intParser(ToIntBiFunction)
+         */
+        Completer<T> floatParser(FloatParser parser);
+
+        /**
+         * Parse a {@code Double} argument without boxing
+         *
+         * @see #intParser(ToIntBiFunction)
+         */
+        Completer<T> doubleParser(ToDoubleBiFunction<String, CommandEnvironment> parser);
+
+        /**
+         * Parse a {@code Boolean} argument
+         *
+         * @see #intParser(ToIntBiFunction)
+         */
+        Completer<T> booleanParser(BiPredicate<String, CommandEnvironment> parser);
+    }
+
+    @FunctionalInterface
+    interface FloatParser {
+        float parse(String input, CommandEnvironment env);
     }
 
     interface Completer<T> {
         Builder<T> tabCompleter(BiFunction<String, CommandEnvironment, List<String>> tabCompleter);
+
+        /**
+         * Complete the argument without blocking the server thread. The future is cancelled if the sender types
+         * again before it completes. Cancellation is best-effort: it does not interrupt the task completing the
+         * future, which may check {@link CompletableFuture#isCancelled()} to stop early.
+         * <br/>
+         * Synchronous completions never wait for the future: they only return its result if it is already
+         * completed, or if a {@link TabCompletionCache} kept it from a previous keystroke.
+         *
+         * @see CommandDefinition#tabCompleteAsync(org.bukkit.command.CommandSender, String[])
+         */
+        Builder<T> asyncTabCompleter(BiFunction<String, CommandEnvironment, CompletableFuture<List<String>>> tabCompleter);
     }
 
     interface Builder<T> {
@@ -42,6 +107,48 @@ final class ArgumentBuilderStepsImpl implements CommandArgumentBuilderSteps {
             this.builder.setParser(parser);
             return new Completer<>(builder);
         }
+
+        @Override
+        public CommandArgumentBuilderSteps.Completer<T> asyncParser(final BiFunction<String, CommandEnvironment, CompletableFuture<T>> parser)
+        {
+            this.builder.setAsyncParser(parser);
+            return new Completer<>(builder);
+        }
+
+        @Override
+        public CommandArgumentBuilderSteps.Completer<T> intParser(final ToIntBiFunction<String, CommandEnvironment> parser)
+        {
+            this.builder.setPrimitiveParser(PrimitiveType.INT, parser::applyAsInt);
+            return new Completer<>(builder);
+        }
+
+        @Override
+        public CommandArgumentBuilderSteps.Completer<T> longParser(final ToLongBiFunction<String, CommandEnvironment> parser)
+        {
+            this.builder.setPrimitiveParser(PrimitiveType.LONG, parser);
+            return new Completer<>(builder);
+        }
+
+        @Override
+        public CommandArgumentBuilderSteps.Completer<T> floatParser(final FloatParser parser)
+        {
+            this.builder.setPrimitiveParser(PrimitiveType.FLOAT, (input, env) -> Float.floatToRawIntBits(parser.parse(input, env)));
+            return new Completer<>(builder);
+        }
+
+        @Override
+        public CommandArgumentBuilderSteps.Completer<T> doubleParser(final ToDoubleBiFunction<String, CommandEnvironment> parser)
+        {
+            this.builder.setPrimitiveParser(PrimitiveType.DOUBLE, (input, env) -> Double.doubleToRawLongBits(parser.applyAsDouble(input, env)));
+            return new Completer<>(builder);
+        }
+
+        @Override
+        public CommandArgumentBuilderSteps.Completer<T> booleanParser(final BiPredicate<String, CommandEnvironment> parser)
+        {
+            this.builder.setPrimitiveParser(PrimitiveType.BOOLEAN, (input, env) -> parser.test(input, env) ? 1 : 0);
+            return new Completer<>(builder);
+        }
     }
 
     static class Completer<T> implements CommandArgumentBuilderSteps.Completer<T> {
@@ -59,6 +166,13 @@ final class ArgumentBuilderStepsImpl implements CommandArgumentBuilderSteps {
             builder.setTabCompleter(tabCompleter);
             return new Builder<>(builder);
         }
+
+        @Override
+        public CommandArgumentBuilderSteps.Builder<T> asyncTabCompleter(final BiFunction<String, CommandEnvironment, CompletableFuture<List<String>>> tabCompleter)
+        {
+            builder.setAsyncTabCompleter(tabCompleter);
+            return new Builder<>(builder);
+        }
     }
 
     static class Builder<T> implements CommandArgumentBuilderSteps.Builder<T> {
@@ -6,9 +6,13 @@ import org.bukkit.ChatColor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
+import java.util.function.ToLongBiFunction;
 
 /**
  * Definition of a type of argument, how to parse it, how to auto-complete it, and how to handle errors
@@ -19,16 +23,48 @@ class CommandArgumentDefinition<T> {
     @Getter
     private final Class<? extends CommandArgument<T>> type;
     private final BiFunction<String, CommandEnvironment, T> parser;
+    @Nullable
+    private final BiFunction<String, CommandEnvironment, CompletableFuture<T>> asyncParser;
+    /**
+     * Type of the values of primitive arguments, null for other arguments
+     */
+    @Nullable
+    @Getter
+    private final PrimitiveType primitiveType;
+    /**
+     * Parser of primitive arguments, returning the raw bits of the value
+     */
+    @Nullable
+    private final ToLongBiFunction<String, CommandEnvironment> primitiveParser;
+    @Nullable
     private final BiFunction<String, CommandEnvironment, List<String>> tabCompleter;
     @Nullable
+    private final BiFunction<String, CommandEnvironment, CompletableFuture<List<String>>> asyncTabCompleter;
+    /**
+     * Constructor of {@link #type}, of type (String)CommandArgument
+     */
+    private final MethodHandle factory;
+    @Nullable
+    @Getter
     private final String defaultInput;
     private final ArgumentErrorHandlers errorHandlers;
     private final boolean optional;
+    /**
+     * Slot of the value of this argument in the environments of {@link #layout}
+     */
+    @Nullable
+    private EnvironmentLayout layout;
+    private int slot = -1;
 
     public CommandArgumentDefinition(final String name,
                                      final Class<? extends CommandArgument<T>> type,
                                      final BiFunction<String, CommandEnvironment, T> parser,
-                                     final BiFunction<String, CommandEnvironment, List<String>> tabCompleter,
+                                     @Nullable final BiFunction<String, CommandEnvironment, CompletableFuture<T>> asyncParser,
+                                     @Nullable final PrimitiveType primitiveType,
+                                     @Nullable final ToLongBiFunction<String, CommandEnvironment> primitiveParser,
+                                     @Nullable final BiFunction<String, CommandEnvironment, List<String>> tabCompleter,
+                                     @Nullable final BiFunction<String, CommandEnvironment, CompletableFuture<List<String>>> asyncTabCompleter,
+                                     final MethodHandle factory,
                                      final @Nullable String defaultInput,
                                      final ArgumentErrorHandlers errorHandlers,
                                      final boolean optional)
@@ -36,7 +72,12 @@ class CommandArgumentDefinition<T> {
         this.name = name;
         this.type = type;
         this.parser = parser;
+        this.asyncParser = asyncParser;
+        this.primitiveType = primitiveType;
+        this.primitiveParser = primitiveParser;
         this.tabCompleter = tabCompleter;
+        this.asyncTabCompleter = asyncTabCompleter;
+        this.factory = factory;
         this.defaultInput = defaultInput;
         this.errorHandlers = errorHandlers;
         this.optional = optional;
@@ -60,46 +101,173 @@ class CommandArgumentDefinition<T> {
         }
         catch (Exception e)
         {
-            if (errorHandlers.hasHandlerFor(e.getClass()))
-                environment.getSender().sendMessage(ChatColor.RED + errorHandlers.getMessageFor(e));
-            else
-                throw new ArgumentParsingException("Received exception during parsing", e);
+            handleError(e, environment);
         }
         return null;
     }
 
+    /**
+     * Parse the input and store the resulting value in the environment, without instantiating the argument class.
+     *
+     * @return False if a handled parsing error occurred
+     *
+     * @throws ArgumentParsingException If an exception occurred during parsing and was not handled
+     */
+    public boolean parse(@NotNull String input, @NotNull CommandEnvironment environment) throws ArgumentParsingException
+    {
+        try
+        {
+            store(input, environment);
+            return true;
+        }
+        catch (Exception e)
+        {
+            handleError(e, environment);
+        }
+        return false;
+    }
+
+    /**
+     * Parse the input without blocking, and store the resulting value in the environment. Arguments without an async
+     * parser are parsed immediately.
+     *
+     * @param resume Executor storing the value or handling the error once the async parser has completed, so that the
+     * execution does not continue on the thread of the parser
+     *
+     * @return Completed with false if a handled parsing error occurred, or exceptionally with an
+     * {@link ArgumentParsingException} if an unhandled one occurred
+     */
+    CompletableFuture<Boolean> parseAsync(@NotNull String input, @NotNull CommandEnvironment environment,
+                                          @NotNull Executor resume)
+    {
+        if (asyncParser == null)
+        {
+            try
+            {
+                return CompletableFuture.completedFuture(parse(input, environment));
+            }
+            catch (ArgumentParsingException e)
+            {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture<T> future;
+        try
+        {
+            future = asyncParser.apply(input, environment);
+        }
+        catch (Exception e)
+        {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.handleAsync((value, error) -> {
+            if (error == null)
+            {
+                environment.setArgument(this, value);
+                return true;
+            }
+            handleError(error, environment);
+            return false;
+        }, resume);
+    }
+
+    void assignSlot(@NotNull EnvironmentLayout layout)
+    {
+        this.slot = layout.add(name);
+        this.layout = layout;
+    }
+
+    /**
+     * @return Slot of the value of this argument in environments of the layout, -1 if it has none
+     */
+    int slotIn(@Nullable EnvironmentLayout layout)
+    {
+        return layout != null && layout == this.layout ? slot : -1;
+    }
+
+    boolean hasAsyncParser()
+    {
+        return asyncParser != null;
+    }
+
+    private void handleError(Throwable e, CommandEnvironment environment) throws ArgumentParsingException
+    {
+        // Failures of async parsers are wrapped by their future
+        if (e instanceof CompletionException && e.getCause() != null)
+            e = e.getCause();
+        if (errorHandlers.hasHandlerFor(e.getClass()))
+            environment.getSender().sendMessage(ChatColor.RED + errorHandlers.getMessageFor(e));
+        else
+            throw new ArgumentParsingException("Received exception during parsing", e);
+    }
+
     @NotNull
-    private <U extends CommandArgument<T>> U wrapValue(@NotNull T value) throws ArgumentParsingException
+    <U extends CommandArgument<T>> U wrapValue(@NotNull T value) throws ArgumentParsingException
     {
         try
         {
-            Constructor<? extends CommandArgument<T>> constructor = this.type.getDeclaredConstructor(String.class);
-            constructor.setAccessible(true);
-            return (U) constructor.newInstance(this.name).setValue(value);
+            return (U) ((CommandArgument<T>) factory.invokeExact(this.name)).setValue(value);
         }
-        catch (SecurityException | ReflectiveOperationException e)
+        catch (Throwable e)
         {
-            throw new ArgumentParsingException("Failed to construct a new argument instance via reflective access", e);
+            throw new ArgumentParsingException("Failed to construct a new argument instance", e);
         }
     }
 
+    /**
+     * @return Null if the argument has no completions, or only async ones
+     */
     @Nullable
     public List<String> tabComplete(String input, CommandEnvironment env)
     {
         return tabCompleter == null ? null : tabCompleter.apply(input, env);
     }
 
+    /**
+     * Complete the input with the async completer, or immediately with the synchronous one
+     *
+     * @return Completed with null if the argument has no completions
+     */
+    CompletableFuture<List<String>> tabCompleteAsync(String input, CommandEnvironment env)
+    {
+        try
+        {
+            if (asyncTabCompleter == null)
+                return CompletableFuture.completedFuture(tabComplete(input, env));
+            return asyncTabCompleter.apply(input, env);
+        }
+        catch (RuntimeException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    boolean hasAsyncTabCompleter()
+    {
+        return asyncTabCompleter != null;
+    }
+
     public boolean hasDefault()
     {
         return defaultInput != null && !defaultInput.isEmpty();
     }
 
-    public @NotNull CommandArgument<T> getDefault(CommandEnvironment env) throws IllegalStateException, ArgumentParsingException
+    /**
+     * Parse the default input and store the resulting value in the environment
+     */
+    public void parseDefault(CommandEnvironment env) throws IllegalStateException
     {
         if (defaultInput == null)
             throw new IllegalStateException("Not default supplier provided");
-        T value = parser.apply(defaultInput, env);
-        return wrapValue(value);
+        store(defaultInput, env);
+    }
+
+    private void store(String input, CommandEnvironment env)
+    {
+        if (primitiveParser != null)
+            env.setPrimitive(this, primitiveParser.applyAsLong(input, env));
+        else
+            env.setArgument(this, parser.apply(input, env));
     }
 
     public boolean isOptional()
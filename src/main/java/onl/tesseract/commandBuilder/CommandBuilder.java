@@ -1,12 +1,16 @@
 package onl.tesseract.commandBuilder;
 
 import onl.tesseract.commandBuilder.annotation.Perm;
+import onl.tesseract.commandBuilder.metrics.CommandMetrics;
 import onl.tesseract.commandBuilder.exception.CommandBuildException;
+import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletionStage;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -21,12 +25,14 @@ import java.util.function.Function;
  *
  * @see CommandContext Annotation-based command builder
  */
-final class CommandBuilder {
+public final class CommandBuilder {
 
     final List<CommandArgumentDefinition<?>> arguments = new ArrayList<>();
     final List<CommandArgumentDefinition<?>> optionalArguments = new ArrayList<>();
     final List<CommandArgumentDefinition<?>> bodyArguments = new ArrayList<>();
     BiConsumer<CommandEnvironment, CommandDefinition> consumer;
+    @Nullable
+    private Function<CommandEnvironment, ? extends CompletionStage<?>> futureBody;
     // Use linked hashmap to keep insertion order
     // Useful to display help messages with subcommands in a pertinent order
     private final HashMap<String, CommandBuilder> subCommands = new LinkedHashMap<>();
@@ -39,6 +45,21 @@ final class CommandBuilder {
     private Perm.Mode permissionMode = Perm.Mode.INHERIT;
     private boolean playerOnly;
     private boolean isAsync;
+    @Nullable
+    private CommandMetrics metrics;
+    @Nullable
+    private TickBudget tickBudget;
+    @Nullable
+    private TabCompletionCache tabCompletionCache;
+    @Nullable
+    private Boolean quotedArgs;
+    private Boolean pooledEnvironments;
+    @Nullable
+    private RateLimiter rateLimiter;
+    @Nullable
+    private AsyncCommandExecutor asyncExecutor;
+    @Nullable
+    private String source;
     private final List<PredicateDefinition> predicates = new ArrayList<>();
     private final List<String> aliases = new ArrayList<>();
     private final List<Pair<String, Function<CommandEnvironment, Object>>> envInserters = new ArrayList<>();
@@ -98,12 +119,40 @@ final class CommandBuilder {
         }
     }
 
+    /**
+     * Add an argument of the given class, as declared by an {@link onl.tesseract.commandBuilder.annotation.Argument}
+     * annotation. Optional arguments are added as with {@link #withOptionalArg(CommandArgumentDefinition)}.
+     *
+     * @param type Class defining the argument
+     * @param name Name of the argument
+     * @param optional Whether the argument is optional
+     * @param def Default input of an optional argument
+     *
+     * @return this
+     */
+    public CommandBuilder withArg(Class<? extends CommandArgument<?>> type, String name, boolean optional, String def)
+    {
+        CommandArgumentDefinition<?> definition = CommandArgumentBuilder.define(type, name, optional, def);
+        return optional ? withOptionalArg(definition) : withArg(definition);
+    }
+
     public CommandBuilder withBodyArg(CommandArgumentDefinition<?> arg)
     {
         bodyArguments.add(arg);
         return this;
     }
 
+    /**
+     * Add an argument to the command body, as declared by an {@link onl.tesseract.commandBuilder.annotation.Argument}
+     * annotation on a {@link onl.tesseract.commandBuilder.annotation.CommandBody} method parameter.
+     *
+     * @return this
+     */
+    public CommandBuilder withBodyArg(Class<? extends CommandArgument<?>> type, String name, boolean optional, String def)
+    {
+        return withBodyArg(CommandArgumentBuilder.define(type, name, optional, def));
+    }
+
     /**
      * Add an optional argument to this command. This is incompatible with the use of subcommands
      *
@@ -142,6 +191,7 @@ final class CommandBuilder {
      */
     public CommandBuilder command(Consumer<CommandEnvironment> consumer)
     {
+        this.futureBody = null;
         this.consumer = (env, self) -> {
             if (consumer == null)
                 self.help(env.getSender());
@@ -157,6 +207,19 @@ final class CommandBuilder {
         return this;
     }
 
+    /**
+     * Set a body returning a future, for commands waiting on I/O without blocking. The command completes with the
+     * future, and its failure is reported to the sender.
+     *
+     * @see CommandDefinition#executeAsync(CommandSender, String[])
+     */
+    public CommandBuilder commandFuture(Function<CommandEnvironment, ? extends CompletionStage<?>> body)
+    {
+        this.consumer = null;
+        this.futureBody = body;
+        return this;
+    }
+
     /**
      * Set a description for this command. The description will be shown in default help messages.
      *
@@ -222,9 +285,16 @@ final class CommandBuilder {
         return this;
     }
 
+    /**
+     * Build the definition of this command. Without a parent, the built tree is frozen: its collections are immutable
+     * and it can be executed and completed from any thread.
+     *
+     * @param parent Definition of the parent command, null for a root command
+     */
     public CommandDefinition build(@Nullable CommandDefinition parent)
     {
-        Map<String, CommandDefinition> commands = new HashMap<>();
+        // Keep the subcommands in insertion order, for help messages
+        Map<String, CommandDefinition> commands = new LinkedHashMap<>();
         Map<String, CommandDefinition> subAliases = new HashMap<>();
         Permission effectivePermission = Permission.NONE;
         if (this.permissionMode == Perm.Mode.AUTO)
@@ -250,6 +320,7 @@ final class CommandBuilder {
                 optionalArguments,
                 bodyArguments,
                 consumer,
+                futureBody,
                 commands,
                 subAliases,
                 description,
@@ -259,8 +330,17 @@ final class CommandBuilder {
                 predicates,
                 this.aliases,
                 envInserters,
-                isAsync
+                isAsync,
+                parent == null ? name : parent.getPath() + "." + name,
+                metrics != null ? metrics : parent != null ? parent.getMetrics() : CommandMetrics.NONE,
+                tickBudget != null ? tickBudget : parent != null ? parent.getTickBudget() : null,
+                asyncExecutor != null ? asyncExecutor : parent != null ? parent.getAsyncExecutor() : null,
+                tabCompletionCache != null ? tabCompletionCache : parent != null ? parent.getTabCompletionCache() : null,
+                quotedArgs != null ? quotedArgs : parent != null && parent.isQuotedArgs(),
+                pooledEnvironments != null ? pooledEnvironments : parent != null && parent.isPooledEnvironments(),
+                rateLimiter
         );
+        definition.setSource(source);
         subCommands.forEach((subCommandName, builder) -> {
             if (builder.permissionMode == Perm.Mode.INHERIT)
                 builder.permissionMode = permissionMode;
@@ -268,6 +348,12 @@ final class CommandBuilder {
             commands.put(subCommandName, def);
             builder.aliases.forEach(alias -> subAliases.put(alias, def));
         });
+        definition.prepare();
+        if (parent == null)
+        {
+            definition.assignSlots(new EnvironmentLayout());
+            definition.freeze();
+        }
         return definition;
     }
 
@@ -287,4 +373,98 @@ final class CommandBuilder {
         isAsync = async;
         return this;
     }
+
+    /**
+     * Allow each player to execute this command {@code permits} times per period. Executions over the limit are
+     * rejected before the body runs. Executions of the subcommands of this command and of its help are not counted,
+     * and subcommands are not limited.
+     *
+     * @see onl.tesseract.commandBuilder.annotation.RateLimit
+     */
+    public CommandBuilder rateLimit(final int permits, @NotNull final Duration period)
+    {
+        this.rateLimiter = new RateLimiter(permits, period);
+        return this;
+    }
+
+    /**
+     * Allow each player to execute this command once per cooldown
+     */
+    public CommandBuilder cooldown(@NotNull final Duration cooldown)
+    {
+        return rateLimit(1, cooldown);
+    }
+
+    /**
+     * Record the execution measures of this command and its subcommands. By default, subcommands use the metrics of
+     * their parent.
+     */
+    public CommandBuilder metrics(@NotNull final CommandMetrics metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Watch the time spent on the server thread by this command and its subcommands. By default, subcommands use the
+     * tick budget of their parent.
+     */
+    public CommandBuilder tickBudget(@Nullable final TickBudget tickBudget)
+    {
+        this.tickBudget = tickBudget;
+        return this;
+    }
+
+    /**
+     * Run the bodies of the async commands of this tree with the given executor, instead of the Bukkit scheduler. By
+     * default, subcommands use the executor of their parent.
+     */
+    public CommandBuilder asyncExecutor(@Nullable final AsyncCommandExecutor asyncExecutor)
+    {
+        this.asyncExecutor = asyncExecutor;
+        return this;
+    }
+
+    /**
+     * Cache the argument completions of this command and its subcommands. By default, subcommands use the cache of
+     * their parent.
+     */
+    public CommandBuilder tabCompletionCache(@Nullable final TabCompletionCache tabCompletionCache)
+    {
+        this.tabCompletionCache = tabCompletionCache;
+        return this;
+    }
+
+    /**
+     * Tokenize the command line of this command and its subcommands with {@link CommandLine}, so that quoted args may
+     * contain spaces, such as {@code /guild rename "Knights of Ni"}. By default, subcommands use the setting of their
+     * parent.
+     */
+    public CommandBuilder quotedArgs(final boolean quotedArgs)
+    {
+        this.quotedArgs = quotedArgs;
+        return this;
+    }
+
+    /**
+     * Reuse the storage of the environment and the execution context per thread for the synchronous executions of
+     * this command and its subcommands, instead of allocating them for each execution. Bodies keeping the environment
+     * after they return must call {@link CommandEnvironment#retain()}, otherwise using it later throws an
+     * {@link IllegalStateException}; async bodies and bodies returning futures retain it automatically. By default,
+     * subcommands use the setting of their parent.
+     */
+    public CommandBuilder pooledEnvironments(final boolean pooledEnvironments)
+    {
+        this.pooledEnvironments = pooledEnvironments;
+        return this;
+    }
+
+    /**
+     * Describe the code declaring this command, such as "com.example.GuildCommand#kick". Used in diagnostics.
+     */
+    public CommandBuilder source(@Nullable final String source)
+    {
+        this.source = source;
+        return this;
+    }
 }
@@ -2,6 +2,7 @@ package onl.tesseract.commandBuilder;
 
 import lombok.RequiredArgsConstructor;
 import onl.tesseract.commandBuilder.annotation.Perm;
+import onl.tesseract.commandBuilder.annotation.RateLimit;
 import onl.tesseract.commandBuilder.exception.CommandBuildException;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -13,10 +14,15 @@ import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Class representation of a command that can be performed in-game.
@@ -37,7 +43,24 @@ public abstract class CommandContext implements CommandExecutor, TabCompleter {
 
     public CommandContext(final CommandInstanceProvider commandInstanceProvider)
     {
-        command = new CommandBuilderProvider(commandInstanceProvider).provideForClass(this).build(null);
+        this(commandInstanceProvider, false);
+    }
+
+    /**
+     * If a command tree was generated for this class at compile time, it is used instead of reading annotations at
+     * runtime. See {@link GeneratedCommandTree}.
+     *
+     * @param parallelBuild If true, sibling subcommands are read in parallel, on the common ForkJoinPool. Useful for
+     * large command trees, when the argument definitions or the command instances are costly to create.
+     */
+    public CommandContext(final CommandInstanceProvider commandInstanceProvider, final boolean parallelBuild)
+    {
+        CommandBuilderProvider provider = new CommandBuilderProvider(commandInstanceProvider, parallelBuild);
+        GeneratedCommandTree generatedTree = GeneratedCommandTree.find(getClass());
+        CommandBuilder builder = generatedTree != null
+                                 ? generatedTree.builder(provider)
+                                 : provider.provideForClass(this);
+        command = builder.build(null);
     }
 
     public void register(final JavaPlugin plugin, final String commandName)
@@ -66,6 +89,27 @@ public abstract class CommandContext implements CommandExecutor, TabCompleter {
         return this.command.tabComplete(sender, args);
     }
 
+    /**
+     * Complete the command without blocking, to be called from asynchronous completion events such as Paper's
+     * AsyncTabCompleteEvent
+     *
+     * @see CommandDefinition#tabCompleteAsync(CommandSender, String[])
+     */
+    public CompletableFuture<List<String>> tabCompleteAsync(@NotNull final CommandSender sender, @NotNull final String[] args)
+    {
+        return this.command.tabCompleteAsync(sender, args);
+    }
+
+    /**
+     * Drop the state kept for a player, to be called when they quit: their completion state, otherwise dropped once
+     * idle for a minute, and their cached permissions.
+     */
+    public void playerQuit(@NotNull final UUID player)
+    {
+        this.command.endCompletion(player);
+        Permission.invalidateCache(player);
+    }
+
     public CommandDefinition getCommandDefinition() {
         return command;
     }
@@ -74,13 +118,23 @@ public abstract class CommandContext implements CommandExecutor, TabCompleter {
 @RequiredArgsConstructor
 final class CommandBuilderProvider implements CommandInstanceFactory {
 
-    private static final Map<Class<?>, Object> classToInstance = new HashMap<>();
+    private static final Map<Class<?>, Object> classToInstance = new ConcurrentHashMap<>();
+    /**
+     * Locks held while creating the instance of a class, so that parallel builds create each instance once
+     */
+    private static final Map<Class<?>, Object> instanceLocks = new ConcurrentHashMap<>();
 
     private final CommandInstanceProvider commandInstanceProvider;
+    private final boolean parallel;
+
+    CommandBuilderProvider(final CommandInstanceProvider commandInstanceProvider)
+    {
+        this(commandInstanceProvider, false);
+    }
 
     CommandBuilder provideForClass(final Object commandBuilder) throws CommandBuildException
     {
-        ClassAnnotationReader reader = new ClassAnnotationReader(commandBuilder, this, commandInstanceProvider);
+        ClassAnnotationReader reader = new ClassAnnotationReader(commandBuilder, this);
         CommandBuilder command = provide(reader);
         for (final CommandBuilder subCommand : reader.readSubCommands())
         {
@@ -104,7 +158,12 @@ final class CommandBuilderProvider implements CommandInstanceFactory {
                 .setAbsolutePermission(permission.absolute())
                 .setPermissionMode(permission.mode())
                 .command(reader.readCommandBody())
-                .setAsync(reader.readIsAsync());
+                .setAsync(reader.readIsAsync())
+                .source(reader.readSource());
+
+        Function<CommandEnvironment, CompletionStage<?>> futureBody = reader.readFutureBody();
+        if (futureBody != null)
+            res.commandFuture(futureBody);
 
         List<CommandArgumentDefinition<?>> arguments = reader.readArguments();
         arguments.forEach(arg -> {
@@ -119,14 +178,17 @@ final class CommandBuilderProvider implements CommandInstanceFactory {
         for (final String alias : reader.readAliases())
             res.alias(alias);
         reader.readEnvInserters().forEach(pair -> res.envInserter(pair.getLeft(), pair.getRight()));
+        RateLimit rateLimit = reader.readRateLimit();
+        if (rateLimit.permits() > 0)
+            res.rateLimit(rateLimit.permits(), Duration.ofMillis(rateLimit.periodMillis()));
         return res;
     }
 
-    @Override
-    public Object getClassInstance(final Class<?> clazz)
+    /**
+     * Get an instance of a command class, from the command instance provider or by calling its no-arg constructor
+     */
+    Object provideInstance(final Class<?> clazz) throws CommandBuildException
     {
-        if (classToInstance.containsKey(clazz))
-            return classToInstance.get(clazz);
         Object instance = commandInstanceProvider.provideInstance(clazz);
         if (instance == null) {
             try {
@@ -136,7 +198,30 @@ final class CommandBuilderProvider implements CommandInstanceFactory {
                 throw new CommandBuildException(e);
             }
         }
-        classToInstance.put(clazz, instance);
         return instance;
     }
+
+    boolean isParallel()
+    {
+        return parallel;
+    }
+
+    @Override
+    public Object getClassInstance(final Class<?> clazz)
+    {
+        Object instance = classToInstance.get(clazz);
+        if (instance != null)
+            return instance;
+        // Not created in computeIfAbsent: the instance creation may build other commands
+        synchronized (instanceLocks.computeIfAbsent(clazz, key -> new Object()))
+        {
+            instance = classToInstance.get(clazz);
+            if (instance == null)
+            {
+                instance = provideInstance(clazz);
+                classToInstance.put(clazz, instance);
+            }
+            return instance;
+        }
+    }
 }
@@ -5,6 +5,7 @@ import lombok.Getter;
 import lombok.Setter;
 import onl.tesseract.commandBuilder.exception.ArgumentParsingException;
 import onl.tesseract.commandBuilder.exception.CommandExecutionException;
+import onl.tesseract.commandBuilder.metrics.CommandMetrics;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -15,9 +16,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Getter(AccessLevel.PACKAGE)
 public class CommandDefinition {
@@ -26,11 +34,23 @@ public class CommandDefinition {
     private final List<CommandArgumentDefinition<?>> arguments;
     private final List<CommandArgumentDefinition<?>> optionalArguments;
     private final List<CommandArgumentDefinition<?>> bodyArguments;
+    private static final CompletionStage<?> DONE = CompletableFuture.completedFuture(null);
+    /**
+     * Time after which the completion session of an idle sender is dropped
+     */
+    static final long COMPLETION_SESSION_TIMEOUT = TimeUnit.MINUTES.toNanos(1);
+
     private final BiConsumer<CommandEnvironment, CommandDefinition> consumer;
+    /**
+     * Body returning a future, used instead of the consumer if set
+     */
+    @Nullable
+    private final Function<CommandEnvironment, ? extends CompletionStage<?>> futureBody;
     // Use linked hashmap to keep insertion order
     // Useful to display help messages with subcommands in a pertinent order
-    private final Map<String, CommandDefinition> subCommands;
-    private final Map<String, CommandDefinition> subCommandsAliases;
+    // Filled by the builder, then replaced by immutable copies when the tree is frozen
+    private Map<String, CommandDefinition> subCommands;
+    private Map<String, CommandDefinition> subCommandsAliases;
     private final String description;
     private final String name;
     @NotNull
@@ -40,35 +60,123 @@ public class CommandDefinition {
     private final List<String> aliases;
     private final List<Pair<String, Function<CommandEnvironment, Object>>> envInserters;
     private final boolean isAsync;
+    @Nullable
+    private final CommandDefinition defaultHelp;
+    /**
+     * Full path of the command from the root, such as "guild.member.kick"
+     */
+    private final String path;
+    @NotNull
+    private volatile CommandMetrics metrics;
+    @Nullable
+    private volatile TickBudget tickBudget;
+    /**
+     * Executor of async bodies. The Bukkit scheduler of the plugin if null.
+     */
+    @Nullable
+    private volatile AsyncCommandExecutor asyncExecutor;
+    @Nullable
+    private volatile TabCompletionCache tabCompletionCache;
+    /**
+     * Whether args are tokenized from the command line, so that quoted args may contain spaces
+     */
+    private volatile boolean quotedArgs;
+    /**
+     * Whether synchronous executions reuse the environment and context of their thread
+     */
+    private volatile boolean pooledEnvironments;
+    /**
+     * Limit of the executions of this command by each player
+     */
+    @Nullable
+    private final RateLimiter rateLimiter;
+    private final ThreadLocal<ExecutionPool> executionPool = ThreadLocal.withInitial(() -> new ExecutionPool(this));
+    /**
+     * In-flight async completions started from this command, by {@link #senderKey(CommandSender) sender key}
+     */
+    private final Map<Object, CompletableFuture<List<String>>> pendingCompletions = new ConcurrentHashMap<>();
+    /**
+     * Completion sessions of the senders completing this command, by {@link #senderKey(CommandSender) sender key}.
+     * Dropped by {@link CommandContext#playerQuit(UUID)} when the player quits, or once idle for
+     * {@link #COMPLETION_SESSION_TIMEOUT}.
+     */
+    private final Map<Object, CompletionSession> completionSessions = new ConcurrentHashMap<>();
+    private volatile long nextSessionSweep = System.nanoTime() + COMPLETION_SESSION_TIMEOUT;
+    /**
+     * Code declaring the command, for diagnostics
+     */
+    @Nullable
     @Setter(AccessLevel.PACKAGE)
-    private Plugin plugin;
+    private String source;
+    private volatile Plugin plugin;
+    /**
+     * Whether an argument of this command or of a subcommand has an async parser, so that executions must go through
+     * {@link #executeAsync(CommandExecutionContext)}
+     */
+    private boolean asyncPipeline;
+    /**
+     * Slots of the environments of the tree, assigned by the root
+     */
+    @Nullable
+    private EnvironmentLayout layout;
+    /**
+     * Slots of the keys of {@link #envInserters}
+     */
+    private int[] envInserterSlots;
+    private SubCommandIndex subCommandIndex;
+    /**
+     * Subcommands by name and alias, compiled once the tree is built so that dispatch does a single lookup per level
+     */
+    private Map<String, CommandDefinition> routes;
+    /**
+     * Whether a mandatory argument reads all the remaining args, so that the args never designate a subcommand
+     */
+    private boolean greedyArguments;
+    private HelpPages helpPages;
+    /**
+     * Whether the tree is built. Written last, so that reading it publishes the whole tree to the reading thread.
+     */
+    private volatile boolean frozen;
 
     CommandDefinition(final List<CommandArgumentDefinition<?>> arguments, final List<CommandArgumentDefinition<?>> optionalArguments,
                       final List<CommandArgumentDefinition<?>> bodyArguments, final BiConsumer<CommandEnvironment, CommandDefinition> consumer,
+                      @Nullable final Function<CommandEnvironment, ? extends CompletionStage<?>> futureBody,
                       final Map<String, CommandDefinition> subCommands,
                       final Map<String, CommandDefinition> subCommandsAliases, final String description, final String name,
                       @NotNull final Permission permission,
                       final boolean playerOnly, final List<PredicateDefinition> predicates, final List<String> aliases,
-                      final List<Pair<String, Function<CommandEnvironment, Object>>> envInserters, boolean isAsync)
+                      final List<Pair<String, Function<CommandEnvironment, Object>>> envInserters, boolean isAsync,
+                      final String path, @NotNull final CommandMetrics metrics, @Nullable final TickBudget tickBudget,
+                      @Nullable final AsyncCommandExecutor asyncExecutor, @Nullable final TabCompletionCache tabCompletionCache,
+                      final boolean quotedArgs, final boolean pooledEnvironments, @Nullable final RateLimiter rateLimiter)
     {
-        this.arguments = arguments;
-        this.optionalArguments = optionalArguments;
-        this.bodyArguments = bodyArguments;
+        this.arguments = List.copyOf(arguments);
+        this.optionalArguments = List.copyOf(optionalArguments);
+        this.bodyArguments = List.copyOf(bodyArguments);
         this.consumer = consumer;
+        this.futureBody = futureBody;
         this.subCommands = subCommands;
         this.subCommandsAliases = subCommandsAliases;
         this.description = description;
         this.name = name;
         this.permission = permission;
         this.playerOnly = playerOnly;
-        this.predicates = predicates;
-        this.aliases = aliases;
-        this.envInserters = envInserters;
+        this.predicates = List.copyOf(predicates);
+        this.aliases = List.copyOf(aliases);
+        this.envInserters = List.copyOf(envInserters);
         this.isAsync = isAsync;
+        this.path = path;
+        this.metrics = metrics;
+        this.tickBudget = tickBudget;
+        this.asyncExecutor = asyncExecutor;
+        this.tabCompletionCache = tabCompletionCache;
+        this.quotedArgs = quotedArgs;
+        this.pooledEnvironments = pooledEnvironments;
+        this.rateLimiter = rateLimiter;
 
         if (!subCommands.containsKey("help") && !name.equals("help"))
         {
-            subCommands.put("help", new CommandBuilder("help")
+            defaultHelp = new CommandBuilder("help")
                     .description("Obtenir de l'aide sur une commande.")
                     .withOptionalArg(new IntegerArgument("page"), "1")
                     .command(env -> {
@@ -84,9 +192,75 @@ public class CommandDefinition {
                             env.getSender().sendMessage(helpGetPage(env.getSender(), 0));
                         }
                     })
-                    .build(this)
-            );
+                    .build(this);
+            subCommands.put("help", defaultHelp);
+        }
+        else
+            defaultHelp = null;
+    }
+
+    /**
+     * Build the lookup structures and help pages over the subcommands. Called once all subcommands have been added.
+     */
+    void prepare()
+    {
+        subCommandIndex = new SubCommandIndex(subCommands, subCommandsAliases);
+        Map<String, CommandDefinition> merged = new HashMap<>(subCommandsAliases);
+        // Names take precedence over aliases
+        merged.putAll(subCommands);
+        routes = Map.copyOf(merged);
+        greedyArguments = arguments.stream().anyMatch(arg -> arg.getType().equals(TextCommandArgument.class));
+        asyncPipeline = Stream.of(arguments, optionalArguments, bodyArguments)
+                              .flatMap(List::stream)
+                              .anyMatch(CommandArgumentDefinition::hasAsyncParser)
+                || subCommands.values().stream().anyMatch(subCommand -> subCommand.asyncPipeline);
+
+        String argList = helpGetArgList();
+        String descriptionLine = hasDescription()
+                                 ? ChatColor.GREEN + name + " " + argList + ChatColor.DARK_GRAY + " : " + ChatColor.DARK_GREEN + description
+                                 : null;
+        CommandDefinition[] subCommandArray = subCommands.values().toArray(new CommandDefinition[0]);
+        String[] subCommandLines = new String[subCommandArray.length];
+        for (int i = 0; i < subCommandArray.length; i++)
+        {
+            CommandDefinition subCommand = subCommandArray[i];
+            subCommandLines[i] = ChatColor.GREEN + name + " " + argList + " " + subCommand.getName() + " " + subCommand
+                    .helpGetArgList()
+                    + (subCommand.hasDescription() ? ChatColor.DARK_GRAY + " : " + ChatColor.DARK_GREEN + subCommand
+                    .getDescription() : "");
         }
+        helpPages = new HelpPages(name, descriptionLine, subCommandArray, subCommandLines);
+    }
+
+    /**
+     * Replace the subcommand maps of this tree by immutable copies, then mark it as built. Called on the root once the
+     * tree is built, so that it can be dispatched and completed from any thread.
+     */
+    void freeze()
+    {
+        freezeCollections();
+        markFrozen();
+    }
+
+    private void freezeCollections()
+    {
+        subCommands = Collections.unmodifiableMap(new LinkedHashMap<>(subCommands));
+        subCommandsAliases = Map.copyOf(subCommandsAliases);
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.freezeCollections();
+    }
+
+    private void markFrozen()
+    {
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.markFrozen();
+        frozen = true;
+    }
+
+    private void requireFrozen()
+    {
+        if (!frozen)
+            throw new IllegalStateException("Command " + path + " is used before its tree is built");
     }
 
     /**
@@ -97,18 +271,144 @@ public class CommandDefinition {
      */
     public boolean execute(CommandSender sender, String[] args)
     {
+        requireFrozen();
+        if (quotedArgs)
+            return execute(sender, String.join(" ", args));
+        if (pooledEnvironments && !asyncPipeline)
+            return executePooled(sender, args, null);
+        return dispatch(sender, new CommandExecutionContext(newEnvironment(sender), this, args));
+    }
+
+    /**
+     * Executes this command from the raw command line, tokenized with {@link CommandLine}. Quoted args may contain
+     * spaces, and greedy arguments receive the rest of the line as typed.
+     *
+     * @param sender Command sender
+     * @param line Command line, without the command label
+     */
+    public boolean execute(CommandSender sender, CharSequence line)
+    {
+        requireFrozen();
+        CommandLine tokens = tokenize(sender, line);
+        if (tokens == null)
+            return false;
+        if (pooledEnvironments && !asyncPipeline)
+            return executePooled(sender, null, tokens);
+        return dispatch(sender, new CommandExecutionContext(newEnvironment(sender), this, tokens));
+    }
+
+    /**
+     * Execute with the environment and context of the thread, cleared once the execution has returned. Executions
+     * started from the body of another one, and environments retained by the previous execution, get new instances.
+     */
+    private boolean executePooled(CommandSender sender, @Nullable String[] args, @Nullable CommandLine line)
+    {
+        ExecutionPool pool = executionPool.get();
+        if (pool.inUse)
+        {
+            CommandEnvironment env = newEnvironment(sender);
+            return dispatch(sender, line != null
+                                    ? new CommandExecutionContext(env, this, line)
+                                    : new CommandExecutionContext(env, this, args));
+        }
+        // Each execution gets its own environment, which fails once released, over the storage of the previous one
+        CommandEnvironment env = pool.environment;
+        if (env == null || env.isRetained())
+            env = pool.environment = newEnvironment(sender);
+        else
+            env = pool.environment = env.recycle(sender, plugin);
+        CommandExecutionContext context = pool.context.reset(env, args, line);
+        pool.inUse = true;
         try
         {
-            return execute(sender, new CommandExecutionContext(new CommandEnvironment(sender), this, args));
+            return dispatch(sender, context);
+        }
+        finally
+        {
+            pool.inUse = false;
+            context.reset(null, null, null);
+            if (!env.isRetained())
+                env.release();
+        }
+    }
+
+    /**
+     * Run the execution from the root of the context, reporting unhandled exceptions
+     */
+    private boolean dispatch(CommandSender sender, CommandExecutionContext context)
+    {
+        if (asyncPipeline)
+        {
+            executeAsync(context).whenComplete((result, error) -> {
+                if (error != null)
+                    reportUnhandled(sender, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            });
+            return true;
+        }
+        try
+        {
+            return execute(sender, context);
         }
         catch (CommandExecutionException e)
         {
-            logger.error("Unhandled exception during command execution", e);
-            sender.sendMessage(ChatColor.RED + "Une erreur est survenue pendant l'exécution de la commande. Contactez un administrateur pour obtenir de l'aide.");
+            reportUnhandled(sender, e);
             return false;
         }
     }
 
+    /**
+     * Executes this command without blocking on argument parsers or command bodies returning futures
+     *
+     * @param sender Command sender
+     * @param args Sent command arguments
+     *
+     * @return Completed with the result of the execution once the arguments are parsed and the body has completed.
+     * Completed exceptionally if an unhandled exception occurred during parsing.
+     */
+    public CompletableFuture<Boolean> executeAsync(CommandSender sender, String[] args)
+    {
+        requireFrozen();
+        CommandExecutionContext context;
+        if (quotedArgs)
+        {
+            CommandLine tokens = tokenize(sender, String.join(" ", args));
+            if (tokens == null)
+                return CompletableFuture.completedFuture(false);
+            context = new CommandExecutionContext(newEnvironment(sender), this, tokens);
+        }
+        else
+            context = new CommandExecutionContext(newEnvironment(sender), this, args);
+        return executeAsync(context);
+    }
+
+    private CommandEnvironment newEnvironment(CommandSender sender)
+    {
+        CommandEnvironment env = new CommandEnvironment(sender, layout);
+        env.setPlugin(plugin);
+        return env;
+    }
+
+    /**
+     * @return Null if the line is invalid, after reporting the error to the sender
+     */
+    @Nullable
+    private CommandLine tokenize(CommandSender sender, CharSequence line)
+    {
+        CommandLine tokens = CommandLine.tokenize(line);
+        if (tokens.getUnclosedQuoteColumn() != -1)
+        {
+            sender.sendMessage(ChatColor.RED + "Unclosed quote at column " + tokens.getUnclosedQuoteColumn());
+            return null;
+        }
+        return tokens;
+    }
+
+    private void reportUnhandled(CommandSender sender, Throwable error)
+    {
+        logger.error("Unhandled exception during command execution", error);
+        sender.sendMessage(ChatColor.RED + "Une erreur est survenue pendant l'exécution de la commande. Contactez un administrateur pour obtenir de l'aide.");
+    }
+
     private boolean preExecutionChecks(CommandExecutionContext context)
     {
         CommandSender sender = context.getEnvironment().getSender();
@@ -117,11 +417,11 @@ public class CommandDefinition {
             sender.sendMessage(ChatColor.RED + "This command is player-only");
             return false;
         }
-        for (var predicate : predicates)
-        {
-            if (!predicate.test(context.getEnvironment()))
-                return false;
-        }
+        // Only the command whose body runs is limited, not the levels dispatching to it
+        if (rateLimiter != null && runsOwnBody(context) && !checkRateLimit(sender))
+            return false;
+        if (!testPredicates(context.getEnvironment()))
+            return false;
         if (context.countRemainingArgs() < arguments.size())
         {
             help(sender);
@@ -130,153 +430,443 @@ public class CommandDefinition {
         return true;
     }
 
+    /**
+     * Whether the args designate the body of this command rather than a subcommand. Mandatory arguments read one arg
+     * each, except text arguments which read all of them, so this is known before any argument is parsed.
+     */
+    private boolean runsOwnBody(CommandExecutionContext context)
+    {
+        if (consumer == null && futureBody == null)
+            return false;
+        if (context.countRemainingArgs() < arguments.size())
+            return false;
+        if (greedyArguments)
+            return true;
+        String routeArg = context.peekArg(arguments.size());
+        return routeArg == null || !routes.containsKey(routeArg);
+    }
+
+    private boolean checkRateLimit(CommandSender sender)
+    {
+        if (rateLimiter == null || !(sender instanceof Player player))
+            return true;
+        long wait = rateLimiter.tryAcquire(player.getUniqueId());
+        if (wait == 0)
+            return true;
+        metrics.recordRateLimited(path);
+        long seconds = (wait + 999_999_999) / 1_000_000_000;
+        sender.sendMessage(ChatColor.RED + "Please wait " + seconds + "s before using this command again");
+        return false;
+    }
+
+    private boolean testPredicates(CommandEnvironment env)
+    {
+        if (predicates.isEmpty())
+            return true;
+        long start = System.nanoTime();
+        try
+        {
+            for (var predicate : predicates)
+            {
+                if (!predicate.test(env))
+                    return false;
+            }
+            return true;
+        }
+        finally
+        {
+            long elapsed = System.nanoTime() - start;
+            metrics.recordPredicateTime(path, elapsed);
+            TickBudget budget = tickBudget;
+            if (budget != null)
+                budget.check(this, TickBudget.Phase.PREDICATES, elapsed);
+        }
+    }
+
+    private enum ArgStep {
+        NEXT,
+        /**
+         * The argument consumed all remaining args
+         */
+        LAST,
+        FAILED
+    }
+
     private boolean processArgs(CommandExecutionContext context, List<CommandArgumentDefinition<?>> argList,
                                 boolean optionals) throws ArgumentParsingException
     {
         for (int i = 0; i < argList.size(); i++)
+        {
+            ArgStep step = processArg(context, argList, i, optionals);
+            if (step == ArgStep.FAILED)
+                return false;
+            if (step == ArgStep.LAST)
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #processArgs(CommandExecutionContext, List, boolean)}, without blocking on async parsers
+     */
+    private CompletableFuture<Boolean> processArgsAsync(CommandExecutionContext context, List<CommandArgumentDefinition<?>> argList,
+                                                        boolean optionals, int from) throws ArgumentParsingException
+    {
+        for (int i = from; i < argList.size(); i++)
         {
             CommandArgumentDefinition<?> arg = argList.get(i);
-            if (arg.getType().equals(TextCommandArgument.class))
+            if (arg.hasAsyncParser())
             {
-                String[] textParts = Arrays.copyOfRange(context.getArgs(), i, context.getArgs().length);
-                StringJoiner text = new StringJoiner(" ");
-                for (String part : textParts)
-                    text.add(part);
-                parseArgument(context.getEnvironment(), arg, text.toString());
+                // Text arguments receive the rest of the args, and missing optional ones their default input
+                boolean text = arg.getType().equals(TextCommandArgument.class);
+                String input = text ? context.remainingText()
+                                    : context.hasNextArg() ? context.nextArg()
+                                    : optionals && arg.hasDefault() ? arg.getDefaultInput() : null;
+                if (input != null)
+                {
+                    int next = text ? argList.size() : i + 1;
+                    return parseArgumentAsync(context.getEnvironment(), arg, input)
+                            .thenCompose(parsed -> parsed
+                                                   ? processArgsAsync(context, argList, optionals, next)
+                                                   : CompletableFuture.completedFuture(false));
+                }
+            }
+            ArgStep step = processArg(context, argList, i, optionals);
+            if (step == ArgStep.FAILED)
+                return CompletableFuture.completedFuture(false);
+            if (step == ArgStep.LAST)
                 break;
+        }
+        return CompletableFuture.completedFuture(true);
+    }
+
+    private ArgStep processArg(CommandExecutionContext context, List<CommandArgumentDefinition<?>> argList, int i,
+                               boolean optionals) throws ArgumentParsingException
+    {
+        CommandArgumentDefinition<?> arg = argList.get(i);
+        if (arg.getType().equals(TextCommandArgument.class))
+        {
+            parseArgument(context.getEnvironment(), arg, context.remainingText());
+            return ArgStep.LAST;
+        }
+        if (!context.hasNextArg())
+        {
+            if (!optionals)
+            {
+                // No value provided for mandatory arg => Error
+                help(context.getEnvironment().getSender());
+                return ArgStep.FAILED;
             }
-            if (!context.hasNextArg())
+            else if (arg.hasDefault())
+                arg.parseDefault(context.getEnvironment());
+            return ArgStep.NEXT;
+        }
+        int column = context.nextArgColumn();
+        try
+        {
+            return parseArgument(context.getEnvironment(), arg, context.nextArg()) ? ArgStep.NEXT : ArgStep.FAILED;
+        }
+        catch (ArgumentParsingException e)
+        {
+            if (column == -1)
+                throw e;
+            throw new ArgumentParsingException("Cannot parse argument " + arg.getName() + " at column " + column, e);
+        }
+    }
+
+    /**
+     * Execute the command designated by the args, from this command. Each level is checked and parsed in a single pass
+     * over the args, then hands over to its subcommand.
+     */
+    public boolean execute(CommandSender sender, CommandExecutionContext context) throws CommandExecutionException
+    {
+        requireFrozen();
+        CommandDefinition command = this;
+        while (true)
+        {
+            if (!command.preExecutionChecks(context))
+                return false;
+
+            ParseResult parseResult;
+            long parseStart = System.nanoTime();
+            try
             {
-                if (!optionals)
-                {
-                    // No value provided for mandatory arg => Error
-                    help(context.getEnvironment().getSender());
-                    return false;
-                }
-                else if (arg.hasDefault())
-                    context.getEnvironment().setArgument(arg.getName(), arg.getDefault(context.getEnvironment()));
+                parseResult = command.parseArguments(context);
             }
-            else if (!parseArgument(context.getEnvironment(), arg, context.nextArg()))
+            finally
+            {
+                command.metrics.recordParseTime(command.path, System.nanoTime() - parseStart);
+            }
+            if (parseResult == ParseResult.INVALID)
                 return false;
+            if (parseResult != ParseResult.SUBCOMMAND)
+                return command.runTarget(context) != null;
+
+            context.nextArg();
+            command.executeEnvInserters(context.getEnvironment());
+            command = context.getSubCommand();
         }
-        return true;
     }
 
-    private boolean execSubCommand(CommandExecutionContext context, String commandName) throws CommandExecutionException
+    /**
+     * Asynchronous version of {@link #execute(CommandSender, CommandExecutionContext)}. Parsing is chained without
+     * blocking, and the rest of the execution resumes on the server thread when the command has a plugin.
+     */
+    CompletableFuture<Boolean> executeAsync(CommandExecutionContext context)
     {
-        CommandSender sender = context.getEnvironment().getSender();
-        executeEnvInserters(context.getEnvironment());
-        CommandDefinition subCommand = getSubCommandOrAlias(commandName);
-        return subCommand.execute(sender, context);
+        try
+        {
+            if (!preExecutionChecks(context))
+                return CompletableFuture.completedFuture(false);
+
+            long parseStart = System.nanoTime();
+            return parseArgumentsAsync(context).thenComposeAsync(parseResult -> {
+                metrics.recordParseTime(path, System.nanoTime() - parseStart);
+                if (parseResult == ParseResult.INVALID)
+                    return CompletableFuture.completedFuture(false);
+                if (parseResult == ParseResult.SUBCOMMAND)
+                {
+                    context.nextArg();
+                    executeEnvInserters(context.getEnvironment());
+                    return context.getSubCommand().executeAsync(context);
+                }
+                CompletionStage<?> body = runTarget(context);
+                return body == null
+                       ? CompletableFuture.completedFuture(false)
+                       : body.thenApply(result -> true).toCompletableFuture();
+            }, serverThreadExecutor());
+        }
+        catch (RuntimeException e)
+        {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    public boolean execute(CommandSender sender, CommandExecutionContext context) throws CommandExecutionException
+    /**
+     * Runs tasks on the server thread if the command has a plugin, immediately otherwise
+     */
+    private Executor serverThreadExecutor()
     {
-        if (!preExecutionChecks(context))
-            return false;
+        Plugin owner = plugin;
+        return owner == null ? Runnable::run : task -> ServerThread.run(owner, task);
+    }
 
+    /**
+     * Check the permission, then run the body of this command
+     *
+     * @return Null if the permission is denied, otherwise completed once the body has completed
+     */
+    @Nullable
+    private CompletionStage<?> runTarget(CommandExecutionContext context)
+    {
         CommandEnvironment env = context.getEnvironment();
+        CommandSender sender = env.getSender();
+        metrics.recordInvocation(path);
+        if (!getPermission().hasPermission(sender))
+        {
+            metrics.recordPermissionDenied(path);
+            sender.sendMessage(ChatColor.RED + "You don't have the permission to perform this command");
+            return null;
+        }
+        if (consumer == null && futureBody == null)
+        {
+            executeEnvInserters(env);
+            help(sender);
+            return DONE;
+        }
+        executeEnvInserters(env);
+        // The body outlives the execution, so the environment cannot be reused, and its continuations may read it
+        // off the server thread, where inserters using the Bukkit API must not run
+        if (futureBody != null)
+        {
+            env.retain();
+            env.resolveLazyValues();
+        }
+        if (!isAsync && !isPromotedToAsync())
+            return runBody(env, true);
+        env.retain();
+        // Inserters may use the Bukkit API, which is only safe on the server thread
+        env.resolveLazyValues();
+        runAsync(() -> runBody(env, false));
+        return DONE;
+    }
 
+    private enum ParseResult {
+        INVALID,
+        /**
+         * Arguments parsed, the next arg is the name of the subcommand recorded in the context
+         */
+        SUBCOMMAND,
+        DONE
+    }
+
+    private ParseResult parseArguments(CommandExecutionContext context) throws ArgumentParsingException
+    {
         // Parse mandatory arguments
         if (!processArgs(context, arguments, false))
-            return false;
+            return ParseResult.INVALID;
 
-        if (context.hasNextArg() && hasCommand(context.peekNextArg()))
-            return execSubCommand(context, context.nextArg());
+        if (routeToSubCommand(context))
+            return ParseResult.SUBCOMMAND;
 
         // Parse optional arguments
         if (!optionalArguments.isEmpty())
         {
             if (!processArgs(context, optionalArguments, true))
-                return false;
+                return ParseResult.INVALID;
         }
-        else if (context.hasNextArg() && (subCommands.containsKey(context.peekNextArg()) || subCommandsAliases.containsKey(context.peekNextArg())))
-            return execSubCommand(context, context.nextArg());
         else if (context.hasNextArg() && !bodyArguments.isEmpty())
         {
             if (!processArgs(context, bodyArguments, false))
-                return false;
+                return ParseResult.INVALID;
         }
-//        else if (context.hasNextArg())
-//        {
-//            help(sender);
-//            return false;
-//        }
+        return ParseResult.DONE;
+    }
 
-        if (!getPermission().hasPermission(sender))
+    private CompletableFuture<ParseResult> parseArgumentsAsync(CommandExecutionContext context) throws ArgumentParsingException
+    {
+        // Parse mandatory arguments
+        return processArgsAsync(context, arguments, false, 0).thenCompose(parsed -> {
+            if (!parsed)
+                return CompletableFuture.completedFuture(ParseResult.INVALID);
+            if (routeToSubCommand(context))
+                return CompletableFuture.completedFuture(ParseResult.SUBCOMMAND);
+
+            // Parse optional arguments
+            CompletableFuture<Boolean> remaining;
+            if (!optionalArguments.isEmpty())
+                remaining = processArgsAsync(context, optionalArguments, true, 0);
+            else if (context.hasNextArg() && !bodyArguments.isEmpty())
+                remaining = processArgsAsync(context, bodyArguments, false, 0);
+            else
+                return CompletableFuture.completedFuture(ParseResult.DONE);
+            return remaining.thenApply(ok -> ok ? ParseResult.DONE : ParseResult.INVALID);
+        });
+    }
+
+    private boolean isPromotedToAsync()
+    {
+        TickBudget budget = tickBudget;
+        return budget != null && canRunAsync() && budget.isPromoted(path);
+    }
+
+    boolean canRunAsync()
+    {
+        return asyncExecutor != null || plugin != null;
+    }
+
+    private void runAsync(Runnable body)
+    {
+        Runnable task = () -> {
+            try
+            {
+                body.run();
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("Unhandled exception during async execution of command " + path, e);
+            }
+        };
+        AsyncCommandExecutor executor = asyncExecutor;
+        if (executor != null)
+            executor.execute(task);
+        else
+            Objects.requireNonNull(plugin, "Plugin or async executor is required for async commands")
+                   .getServer().getScheduler().runTaskAsynchronously(plugin, task);
+    }
+
+    /**
+     * @return Completed once the body has completed. Failures of future bodies are reported to the sender, and
+     * complete the stage normally.
+     */
+    private CompletionStage<?> runBody(CommandEnvironment env, boolean onServerThread)
+    {
+        long start = System.nanoTime();
+        CompletionStage<?> stage = null;
+        try
         {
-            sender.sendMessage(ChatColor.RED + "You don't have the permission to perform this command");
-            return false;
-        }
-        executeEnvInserters(env);
-        if (consumer != null) {
-            if (!isAsync)
+            if (futureBody != null)
+                stage = futureBody.apply(env);
+            else
                 consumer.accept(env, this);
-            else {
-                Objects.requireNonNull(plugin, "Plugin is required for async commands")
-                        .getServer().getScheduler().runTaskAsynchronously(plugin, () -> consumer.accept(env, this));
-            }
         }
-        else
-            help(sender);
-        return true;
+        catch (RuntimeException | Error e)
+        {
+            metrics.recordFailure(path);
+            throw e;
+        }
+        finally
+        {
+            long elapsed = System.nanoTime() - start;
+            if (stage == null)
+                metrics.recordBodyTime(path, elapsed);
+            TickBudget budget = tickBudget;
+            if (onServerThread && budget != null)
+                budget.check(this, TickBudget.Phase.BODY, elapsed);
+        }
+        if (stage == null)
+            return DONE;
+        return stage.handle((result, error) -> {
+            metrics.recordBodyTime(path, System.nanoTime() - start);
+            if (error != null)
+            {
+                metrics.recordFailure(path);
+                reportUnhandled(env.getSender(), error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+            return result;
+        });
     }
 
-    private boolean hasCommand(String name)
+    /**
+     * Find the subcommand designated by the next arg, and record it in the context
+     */
+    private boolean routeToSubCommand(CommandExecutionContext context)
     {
-        return subCommands.containsKey(name) || subCommandsAliases.containsKey(name);
+        if (!context.hasNextArg())
+            return false;
+        CommandDefinition subCommand = routes.get(context.peekNextArg());
+        context.setSubCommand(subCommand);
+        return subCommand != null;
     }
 
+    /**
+     * Register the env inserters of this command. Their values are computed when first read, so that commands not
+     * reading them do not load them.
+     */
     private void executeEnvInserters(CommandEnvironment env)
     {
-        envInserters.forEach(pair -> env.set(pair.getLeft(), pair.getRight().apply(env)));
+        for (int i = 0; i < envInserters.size(); i++)
+        {
+            Pair<String, Function<CommandEnvironment, Object>> inserter = envInserters.get(i);
+            if (envInserterSlots != null && env.getLayout() == layout)
+                env.setLazy(envInserterSlots[i], inserter.getRight());
+            else
+                env.setLazy(inserter.getLeft(), inserter.getRight());
+        }
     }
 
-    public String[] helpGetPage(CommandSender sender, int page)
+    /**
+     * Assign the slots of the arguments and env inserter keys of this command and its subcommands. Called on the root of
+     * a tree once it is built.
+     */
+    void assignSlots(EnvironmentLayout layout)
     {
-        final String[] lines = helpGetAllLines(sender);
-        final int totalPageCount = lines.length / 8 + 1;
-        if (page < 0 || page >= totalPageCount)
-            throw new IllegalArgumentException("Page index must be between 0 and pageCount - 1");
-
-        int start = page * 8;
-        int end = (page + 1) * 8 + 1;
-        end = Math.min(lines.length, end);
-
-        String[] res = new String[4 + (end - start)];
-        Arrays.fill(res, "");
-        res[1] = ChatColor.GRAY + " --> help page " + (page + 1) + "/" + totalPageCount;
-        // Copy command usages
-        System.arraycopy(lines, start, res, 2, end - start);
-        // Decoration
-        String boxing = "================";
-        res[0] = ChatColor.YELLOW + boxing + ChatColor.GOLD + " " + name + " "
-                + ChatColor.YELLOW + boxing;
-        res[res.length - 2] = "";
-        res[res.length - 1] = ChatColor.YELLOW + "\\".repeat(16) + ChatColor.GOLD + " • "
-                + ChatColor.YELLOW + "/".repeat(16);
-
-        return res;
-    }
-
-    private String[] helpGetAllLines(CommandSender sender)
-    {
-        List<CommandDefinition> validSubCommands = subCommands.values().stream()
-                                                              .filter(cmd -> cmd.hasPermission(sender))
-                                                              .collect(Collectors.toList());
-        String[] msg = new String[validSubCommands.size() + (description == null || description.isEmpty() ? 0 : 1)];
-        String argList = helpGetArgList();
+        this.layout = layout;
+        Stream.of(arguments, optionalArguments, bodyArguments)
+              .flatMap(List::stream)
+              .forEach(argument -> argument.assignSlot(layout));
+        int[] slots = new int[envInserters.size()];
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = layout.add(envInserters.get(i).getLeft());
+        envInserterSlots = slots;
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.assignSlots(layout);
+    }
 
-        int i = 0;
-        if (description != null && !description.isEmpty())
-            msg[i++] = ChatColor.GREEN + name + " " + argList + ChatColor.DARK_GRAY + " : " + ChatColor.DARK_GREEN
-                    + description;
-        for (CommandDefinition subCommand : validSubCommands)
-            msg[i++] = ChatColor.GREEN + name + " " + argList + " " + subCommand.getName() + " " + subCommand
-                    .helpGetArgList()
-                    + (subCommand.hasDescription() ? ChatColor.DARK_GRAY + " : " + ChatColor.DARK_GREEN + subCommand
-                    .getDescription() : "");
-        return msg;
+    public String[] helpGetPage(CommandSender sender, int page)
+    {
+        requireFrozen();
+        return helpPages.getPage(sender, page);
     }
 
     /**
@@ -284,8 +874,12 @@ public class CommandDefinition {
      */
     public void help(CommandSender sender)
     {
+        requireFrozen();
         CommandDefinition helpCommand = subCommands.get("help");
-        if (helpCommand != null)
+        // The default help command is bypassed, as it only displays the first page
+        if (helpCommand != null && helpCommand == defaultHelp)
+            sender.sendMessage(helpGetPage(sender, 0));
+        else if (helpCommand != null)
             helpCommand.execute(sender, new String[0]);
     }
 
@@ -301,16 +895,31 @@ public class CommandDefinition {
 
     private CommandDefinition getSubCommandOrAlias(String name)
     {
-        return subCommands.getOrDefault(name, subCommandsAliases.get(name));
+        return routes.get(name);
+    }
+
+    private CompletableFuture<Boolean> parseArgumentAsync(CommandEnvironment env, CommandArgumentDefinition<?> argument, String input)
+    {
+        // The rest of the pipeline runs predicates and calls the Bukkit API, so it resumes on the server thread
+        return argument.parseAsync(input, env, serverThreadExecutor()).whenComplete((parsed, error) -> {
+            if (error != null || !parsed)
+                metrics.recordParseError(path);
+        });
     }
 
     private boolean parseArgument(CommandEnvironment env, CommandArgumentDefinition<?> argument, String input) throws ArgumentParsingException
     {
-        CommandArgument<?> instance = argument.newInstance(input, env);
-        if (instance == null)
-            return false;
-        env.setArgument(argument.getName(), instance);
-        return true;
+        boolean parsed = false;
+        try
+        {
+            parsed = argument.parse(input, env);
+            return parsed;
+        }
+        finally
+        {
+            if (!parsed)
+                metrics.recordParseError(path);
+        }
     }
 
     public boolean hasPermission(CommandSender sender)
@@ -323,6 +932,90 @@ public class CommandDefinition {
         return name;
     }
 
+    /**
+     * Full path of the command from the root command, separated by dots, such as "guild.member.kick"
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Record the execution measures of this command and all its subcommands with the given metrics
+     */
+    public void setMetrics(@NotNull final CommandMetrics metrics)
+    {
+        this.metrics = metrics;
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.setMetrics(metrics);
+    }
+
+    /**
+     * Set the plugin owning this command and all its subcommands, used to schedule async executions
+     */
+    void setPlugin(final Plugin plugin)
+    {
+        this.plugin = plugin;
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.setPlugin(plugin);
+    }
+
+    /**
+     * Run the bodies of async commands of this tree with the given executor. Null to use the Bukkit scheduler of the
+     * plugin.
+     */
+    public void setAsyncExecutor(@Nullable final AsyncCommandExecutor asyncExecutor)
+    {
+        this.asyncExecutor = asyncExecutor;
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.setAsyncExecutor(asyncExecutor);
+    }
+
+    /**
+     * Watch the time spent on the server thread by this command and all its subcommands. Null to stop watching.
+     */
+    public void setTickBudget(@Nullable final TickBudget tickBudget)
+    {
+        this.tickBudget = tickBudget;
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.setTickBudget(tickBudget);
+    }
+
+    /**
+     * Cache the argument completions of this command and all its subcommands. Null to disable caching.
+     */
+    public void setTabCompletionCache(@Nullable final TabCompletionCache tabCompletionCache)
+    {
+        this.tabCompletionCache = tabCompletionCache;
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.setTabCompletionCache(tabCompletionCache);
+    }
+
+    /**
+     * Tokenize the command line of this command and all its subcommands, so that quoted args may contain spaces
+     *
+     * @see CommandBuilder#quotedArgs(boolean)
+     */
+    public void setQuotedArgs(final boolean quotedArgs)
+    {
+        this.quotedArgs = quotedArgs;
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.setQuotedArgs(quotedArgs);
+    }
+
+    /**
+     * Reuse the environment and context of the thread for the synchronous executions of this command and all its
+     * subcommands
+     *
+     * @see CommandBuilder#pooledEnvironments(boolean)
+     */
+    public void setPooledEnvironments(final boolean pooledEnvironments)
+    {
+        this.pooledEnvironments = pooledEnvironments;
+        for (CommandDefinition subCommand : subCommands.values())
+            subCommand.setPooledEnvironments(pooledEnvironments);
+    }
+
     public String getDescription()
     {
         return description;
@@ -344,68 +1037,375 @@ public class CommandDefinition {
      */
     public List<String> tabComplete(CommandSender sender, String[] args)
     {
-        return tabComplete(sender, new CommandEnvironment(sender), args);
+        requireFrozen();
+        CompletionSession session = completionSession(sender);
+        synchronized (session)
+        {
+            try
+            {
+                session.resume(this, sender, args);
+                return tabComplete(sender, session, args);
+            }
+            finally
+            {
+                session.detach();
+            }
+        }
     }
 
     @Nullable
     public List<String> tabComplete(CommandSender sender, CommandEnvironment env, String[] args)
     {
-        int i = 0;
-        for (; i < args.length - 1; i++)
+        requireFrozen();
+        CompletionSession session = new CompletionSession(this, env);
+        session.advance(args);
+        return tabComplete(sender, session, args);
+    }
+
+    @Nullable
+    private List<String> tabComplete(CommandSender sender, CompletionSession session, String[] args)
+    {
+        CompletionTarget target = session.resolve(sender, args[args.length - 1]);
+        if (target == null)
+            return null;
+        if (target.argument == null)
+            return target.completions;
+
+        List<String> previousArgs = Arrays.asList(args).subList(0, args.length - 1);
+        TabCompletionCache cache = target.command.tabCompletionCache;
+        if (cache != null)
+        {
+            List<String> cached = cache.get(sender, target.argument, previousArgs, target.input);
+            if (cached != null)
+                return cached;
+        }
+        if (target.argument.hasAsyncTabCompleter())
+        {
+            // Never wait on the server thread: only completions that are already known are returned. The others are
+            // cached for the next keystrokes, or delivered by tabCompleteAsync.
+            return completeArgumentAsync(sender, target, previousArgs)
+                    .exceptionally(error -> List.of())
+                    .getNow(List.of());
+        }
+        List<String> res = target.argument.tabComplete(target.input, target.env);
+        if (res == null)
+            return null;
+        List<String> completions = filterCompletions(res, target.input);
+        if (cache != null)
+            cache.put(sender, target.argument, previousArgs, target.input, completions);
+        return completions;
+    }
+
+    /**
+     * Returns the tab completion list of this command without blocking, for asynchronous completion events such as
+     * Paper's AsyncTabCompleteEvent. Async completers are used, and the previous in-flight completion of the sender is
+     * cancelled. Cancelling only completes its future: the completer computing it is not interrupted.
+     *
+     * @param sender Sender
+     * @param args Sent args
+     *
+     * @return Tab completion list, completed exceptionally with a {@link java.util.concurrent.CancellationException}
+     * if a newer completion of the sender replaced it
+     */
+    public CompletableFuture<List<String>> tabCompleteAsync(CommandSender sender, String[] args)
+    {
+        requireFrozen();
+        CompletionSession session = completionSession(sender);
+        // Serialized with the sync completions of the sender, which may run on another thread
+        synchronized (session)
+        {
+            try
+            {
+                session.resume(this, sender, args);
+                return tabCompleteAsync(sender, session, args);
+            }
+            catch (RuntimeException e)
+            {
+                return CompletableFuture.failedFuture(e);
+            }
+            finally
+            {
+                session.detach();
+            }
+        }
+    }
+
+    private CompletableFuture<List<String>> tabCompleteAsync(CommandSender sender, CompletionSession session, String[] args)
+    {
+        CompletionTarget target = session.resolve(sender, args[args.length - 1]);
+        if (target == null || target.argument == null)
         {
-            Optional<CommandArgumentDefinition<?>> arg = getAnyArgumentAt(i);
+            cancelPendingCompletion(sender);
+            return CompletableFuture.completedFuture(target == null ? null : target.completions);
+        }
 
-            if (arg.isPresent())
+        List<String> previousArgs = Arrays.asList(args).subList(0, args.length - 1);
+        TabCompletionCache cache = target.command.tabCompletionCache;
+        List<String> cached = cache == null ? null : cache.get(sender, target.argument, previousArgs, target.input);
+        if (cached != null)
+        {
+            cancelPendingCompletion(sender);
+            return CompletableFuture.completedFuture(cached);
+        }
+        return completeArgumentAsync(sender, target, previousArgs);
+    }
+
+    /**
+     * Start the async completer of the target. The completer receives a copy of the environment of the session, which
+     * may be used by the next keystrokes while it runs.
+     */
+    private CompletableFuture<List<String>> completeArgumentAsync(CommandSender sender, CompletionTarget target,
+                                                                  List<String> previousArgs)
+    {
+        CompletableFuture<List<String>> lookup = target.argument.tabCompleteAsync(target.input, target.env.copyFor(sender));
+        Object key = senderKey(sender);
+        CompletableFuture<List<String>> previous = pendingCompletions.put(key, lookup);
+        if (previous != null && previous != lookup)
+            previous.cancel(true);
+        lookup.whenComplete((res, error) -> pendingCompletions.remove(key, lookup));
+
+        TabCompletionCache cache = target.command.tabCompletionCache;
+        return lookup.thenApply(res -> {
+            if (res == null)
+                return null;
+            List<String> completions = filterCompletions(res, target.input);
+            if (cache != null)
+                cache.put(sender, target.argument, previousArgs, target.input, completions);
+            return completions;
+        });
+    }
+
+    /**
+     * Cancel the in-flight completion of the sender. Cancellation is best-effort: the completer is not interrupted.
+     */
+    private void cancelPendingCompletion(CommandSender sender)
+    {
+        CompletableFuture<List<String>> previous = pendingCompletions.remove(senderKey(sender));
+        if (previous != null)
+            previous.cancel(true);
+    }
+
+    private static List<String> filterCompletions(List<String> completions, String input)
+    {
+        return completions.stream()
+                          .filter(s -> s.startsWith(input))
+                          .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the completion session of the sender, also used as the lock of its completions. Idle sessions of other
+     * senders are dropped on the way.
+     */
+    private CompletionSession completionSession(CommandSender sender)
+    {
+        long now = System.nanoTime();
+        if (now - nextSessionSweep >= 0)
+            expireCompletionSessions(now);
+        CompletionSession session = completionSessions.computeIfAbsent(senderKey(sender), key -> new CompletionSession());
+        session.lastUsed = now;
+        return session;
+    }
+
+    /**
+     * Drop the completion sessions idle for {@link #COMPLETION_SESSION_TIMEOUT}
+     */
+    void expireCompletionSessions(long now)
+    {
+        nextSessionSweep = now + COMPLETION_SESSION_TIMEOUT;
+        completionSessions.values().removeIf(session -> now - session.lastUsed >= COMPLETION_SESSION_TIMEOUT);
+    }
+
+    /**
+     * Drop the completion session and cancel the in-flight completion of a player, such as when they quit
+     */
+    void endCompletion(UUID player)
+    {
+        completionSessions.remove(player);
+        CompletableFuture<List<String>> pending = pendingCompletions.remove(player);
+        if (pending != null)
+            pending.cancel(true);
+    }
+
+    /**
+     * Key of the state kept for a sender. Players are known by UUID, so that the state never references a player who
+     * quit. Other senders, such as the console, live as long as the server.
+     */
+    static Object senderKey(CommandSender sender)
+    {
+        return sender instanceof Player player ? player.getUniqueId() : sender;
+    }
+
+    /**
+     * Parse state of the previous args of a completed line. Kept by sender, so that each keystroke only parses the
+     * args added since the previous keystroke. The sender is only bound to the environment during a keystroke, and
+     * keystrokes of a sender are serialized by locking its session.
+     */
+    private static final class CompletionSession {
+        private CommandEnvironment env;
+        private final List<String> parsedArgs = new ArrayList<>();
+        /**
+         * {@link System#nanoTime()} of the last keystroke
+         */
+        private volatile long lastUsed;
+        /**
+         * Command of the next arg
+         */
+        private CommandDefinition command;
+        /**
+         * Index of the next arg in the arguments of {@link #command}
+         */
+        private int argIndex;
+        /**
+         * Whether a previous arg is invalid, in which case nothing completes
+         */
+        private boolean invalid;
+
+        private CompletionSession()
+        {
+        }
+
+        private CompletionSession(final CommandDefinition command, final CommandEnvironment env)
+        {
+            this.command = command;
+            this.env = env;
+        }
+
+        /**
+         * Bind the sender for a new keystroke, and parse the previous args typed since the last one. The session is
+         * restarted if an arg that was already parsed changed.
+         */
+        private void resume(CommandDefinition root, CommandSender sender, String[] args)
+        {
+            if (env == null || !continuesWith(args))
+            {
+                env = root.newEnvironment(sender);
+                parsedArgs.clear();
+                command = root;
+                argIndex = 0;
+                invalid = false;
+            }
+            else
             {
-                try
+                env.reuse(sender, root.plugin);
+                env.clearCachedResults();
+            }
+            advance(args);
+        }
+
+        /**
+         * Unbind the sender once the keystroke has been handled
+         */
+        private void detach()
+        {
+            if (env != null)
+                env.reuse(null, env.getPlugin());
+        }
+
+        /**
+         * Whether the previous args start with the args parsed by this session
+         */
+        private boolean continuesWith(String[] args)
+        {
+            if (parsedArgs.size() > args.length - 1)
+                return false;
+            for (int i = 0; i < parsedArgs.size(); i++)
+            {
+                if (!parsedArgs.get(i).equals(args[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Parse the previous args that are not parsed yet
+         */
+        private void advance(String[] args)
+        {
+            for (int i = parsedArgs.size(); i < args.length - 1; i++)
+            {
+                parsedArgs.add(args[i]);
+                if (invalid)
+                    continue;
+                Optional<CommandArgumentDefinition<?>> arg = command.getAnyArgumentAt(argIndex);
+                if (arg.isPresent())
                 {
-                    env.setArgument(arg.get().getName(), arg.get().newInstance(args[i], env));
+                    try
+                    {
+                        arg.get().parse(args[i], env);
+                        argIndex++;
+                    }
+                    catch (Exception e)
+                    {
+                        invalid = true;
+                    }
                 }
-                catch (Exception e)
+                else
                 {
-                    return null;
+                    CommandDefinition subCmd = command.getSubCommandOrAlias(args[i]);
+                    if (subCmd == null)
+                        invalid = true;
+                    else
+                    {
+                        command = subCmd;
+                        argIndex = 0;
+                    }
                 }
             }
-            else
+        }
+
+        /**
+         * Find what the current arg being written completes
+         *
+         * @return Null if there are no completions
+         */
+        @Nullable
+        private CompletionTarget resolve(CommandSender sender, String input)
+        {
+            if (invalid)
+                return null;
+            var arg = command.getAnyArgumentAt(argIndex);
+            if (arg.isPresent())
+                return new CompletionTarget(command, arg.get(), input, env, null);
+            else if (argIndex == command.arguments.size()) // sub command names
             {
-                CommandDefinition subCmd = getSubCommandOrAlias(args[i]);
-                if (subCmd == null)
-                    return null;
-                return subCmd.tabComplete(sender, env, Arrays.copyOfRange(args, i + 1, args.length));
+                List<String> names = command.subCommandIndex.complete(input, cmd -> cmd.hasPermission(sender) && cmd.testStrictPredicates(env));
+                return new CompletionTarget(command, null, input, env, names);
             }
+            return null;
         }
-        // current arg being written
-        final String finalArg = args[i];
-        var arg = getAnyArgumentAt(i);
+    }
+
+    /**
+     * Argument completed by the last arg, or known completions if {@link #argument} is null
+     */
+    private static final class CompletionTarget {
+        private final CommandDefinition command;
+        @Nullable
+        private final CommandArgumentDefinition<?> argument;
+        private final String input;
+        private final CommandEnvironment env;
+        @Nullable
+        private final List<String> completions;
 
-        if (arg.isPresent())
+        private CompletionTarget(final CommandDefinition command, @Nullable final CommandArgumentDefinition<?> argument,
+                                 final String input, final CommandEnvironment env, @Nullable final List<String> completions)
         {
-            List<String> res = arg.get().tabComplete(finalArg, env);
-            if (res == null)
-                return null;
-            return res.stream()
-                      .filter(s -> s.startsWith(finalArg))
-                      .collect(Collectors.toList());
-        }
-        else if (i == arguments.size()) // sub command names
-        {
-            return subCommands.values().stream()
-                    .filter(cmd -> cmd.hasPermission(sender))
-                    .filter(cmd ->
-                            cmd.getPredicates().stream()
-                                    .filter(PredicateDefinition::isStrict)
-                                    .allMatch(predicate -> predicate.test(env))
-                    )
-                    .map(builder -> {
-                        ArrayList<String> strings = new ArrayList<>(builder.aliases);
-                        strings.add(builder.getName());
-                        return strings;
-                    })
-                    .flatMap(Collection::stream)
-                    .filter(s -> s.startsWith(finalArg))
-                    .collect(Collectors.toList());
+            this.command = command;
+            this.argument = argument;
+            this.input = input;
+            this.env = env;
+            this.completions = completions;
         }
-        return null;
+    }
+
+    private boolean testStrictPredicates(CommandEnvironment env)
+    {
+        for (PredicateDefinition predicate : predicates)
+        {
+            if (predicate.isStrict() && !predicate.test(env))
+                return false;
+        }
+        return true;
     }
 
     private Optional<CommandArgumentDefinition<?>> getAnyArgumentAt(int index)
@@ -417,4 +1417,22 @@ public class CommandDefinition {
             arg = optionalArguments.get(index - arguments.size());
         return Optional.ofNullable(arg);
     }
+
+    /**
+     * Environment and context reused by the synchronous executions of a thread
+     */
+    private static final class ExecutionPool {
+        private final CommandExecutionContext context;
+        @Nullable
+        private CommandEnvironment environment;
+        /**
+         * Whether an execution of the thread is using the pool, such as when a body executes another command
+         */
+        private boolean inUse;
+
+        private ExecutionPool(final CommandDefinition rootCommand)
+        {
+            this.context = new CommandExecutionContext(rootCommand);
+        }
+    }
 }
@@ -2,21 +2,98 @@ package onl.tesseract.commandBuilder;
 
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Execution environment of a CommandBuilder. Holds parsed arguments.
+ * <br/>
+ * Environments of a built command tree store values in a flat array, at the slots assigned to the names of the tree.
+ * Other names are stored in maps.
  */
 public class CommandEnvironment {
-    private final CommandSender sender;
-    private final HashMap<String, Object> values = new HashMap<>();
-    private final Map<String, CommandArgument<?>> argumentMap = new HashMap<>();
+    /**
+     * Stored for values set to null, which hide arguments of the same name
+     */
+    private static final Object NULL = new Object();
+    /**
+     * Previous value of a lazy value set by name, when there was none
+     */
+    private static final Object ABSENT = new Object();
+    private static final Object[] NO_SLOTS = new Object[0];
+    /**
+     * Returned by {@link #getCachedResult(String)} when there is no result
+     */
+    static final Object NO_RESULT = new Object();
+
+    private CommandSender sender;
+    @Nullable
+    private Plugin plugin;
+    @Nullable
+    private final EnvironmentLayout layout;
+    /**
+     * Values by slot: a value set by name, an {@link ArgumentValue}, or the definition of a primitive argument whose
+     * value is in {@link #primitives}
+     */
+    private final Object[] slots;
+    /**
+     * Raw bits of the values of primitive arguments, by slot
+     */
+    @Nullable
+    private long[] primitives;
+    @Nullable
+    private HashMap<String, Object> values;
+    @Nullable
+    private Map<String, ArgumentValue<?>> argumentMap;
+    /**
+     * Results of {@link CachedResult} functions during this execution, by key
+     */
+    @Nullable
+    private HashMap<String, Object> cachedResults;
+    /**
+     * Whether this environment must stay valid after the execution, instead of being reused
+     */
+    private boolean retained;
+    /**
+     * Whether the pooled execution of this environment has returned. Its storage then belongs to the next execution of
+     * the thread, so any use of this environment fails.
+     */
+    private boolean released;
 
     public CommandEnvironment(final CommandSender sender)
+    {
+        this(sender, null);
+    }
+
+    CommandEnvironment(final CommandSender sender, @Nullable final EnvironmentLayout layout)
+    {
+        this.sender = sender;
+        this.layout = layout;
+        this.slots = layout == null || layout.size() == 0 ? NO_SLOTS : new Object[layout.size()];
+    }
+
+    /**
+     * Environment of a new pooled execution, taking over the cleared storage of the previous one
+     */
+    private CommandEnvironment(final CommandEnvironment previous, final CommandSender sender, @Nullable final Plugin plugin)
     {
         this.sender = sender;
+        this.plugin = plugin;
+        this.layout = previous.layout;
+        this.slots = previous.slots;
+        this.primitives = previous.primitives;
+        this.values = previous.values;
+        this.argumentMap = previous.argumentMap;
+        this.cachedResults = previous.cachedResults;
     }
 
     /**
@@ -30,43 +107,498 @@ public class CommandEnvironment {
      */
     public <T> T get(String argName, Class<T> type)
     {
-        if (values.containsKey(argName))
-            return type.cast(values.get(argName));
-        else if (argumentMap.containsKey(argName))
+        checkLive();
+        int slot = slotOf(argName);
+        Object stored = slot >= 0 ? slots[slot] : lookup(argName);
+        if (stored instanceof LazyValue lazy)
+            stored = resolve(lazy, slot, argName);
+        if (stored == null || stored == NULL)
+            return null;
+        if (stored instanceof CommandArgumentDefinition<?> definition)
+        {
+            Object value = definition.getPrimitiveType().box(primitives[slot]);
+            if (type.isPrimitive() || type.isInstance(value))
+                return (T) value;
+            // Keep the argument instance for next calls
+            stored = new ArgumentValue<>((CommandArgumentDefinition<Object>) definition, value, null);
+            slots[slot] = stored;
+        }
+        if (stored instanceof ArgumentValue<?> argument)
         {
-            CommandArgument<?> argument = argumentMap.get(argName);
             if (type.isPrimitive())
-                return (T) argument.get();
-            if (type.isInstance(argument.get()))
-                return type.cast(argument.get());
+                return (T) argument.value;
+            if (type.isInstance(argument.value))
+                return type.cast(argument.value);
             else
-                return type.cast(argument);
+                return type.cast(argument.getWrapper());
         }
-        return null;
+        return type.cast(stored);
     }
 
     public Object get(String argName)
     {
-        return values.getOrDefault(argName, argumentMap.get(argName));
+        checkLive();
+        if (isPrimitive(slotOf(argName)))
+            return get(argName, CommandArgument.class);
+        Object stored = lookup(argName);
+        if (stored == null || stored == NULL)
+            return null;
+        return stored instanceof ArgumentValue<?> argument ? argument.getWrapper() : stored;
+    }
+
+    /**
+     * Get the value of an int argument, without boxing if it was parsed with
+     * {@link CommandArgumentBuilderSteps.Parser#intParser}
+     *
+     * @throws IllegalStateException If there is no value with this name
+     * @throws ClassCastException If the value is not a number
+     */
+    public int getInt(String argName)
+    {
+        checkLive();
+        int slot = slotOf(argName);
+        if (isPrimitive(slot, PrimitiveType.INT))
+            return (int) primitives[slot];
+        return getNumber(argName).intValue();
+    }
+
+    /**
+     * @see #getInt(String)
+     */
+    public long getLong(String argName)
+    {
+        checkLive();
+        int slot = slotOf(argName);
+        if (isPrimitive(slot, PrimitiveType.LONG))
+            return primitives[slot];
+        return getNumber(argName).longValue();
+    }
+
+    /**
+     * @see #getInt(String)
+     */
+    public float getFloat(String argName)
+    {
+        checkLive();
+        int slot = slotOf(argName);
+        if (isPrimitive(slot, PrimitiveType.FLOAT))
+            return Float.intBitsToFloat((int) primitives[slot]);
+        return getNumber(argName).floatValue();
+    }
+
+    /**
+     * @see #getInt(String)
+     */
+    public double getDouble(String argName)
+    {
+        checkLive();
+        int slot = slotOf(argName);
+        if (isPrimitive(slot, PrimitiveType.DOUBLE))
+            return Double.longBitsToDouble(primitives[slot]);
+        return getNumber(argName).doubleValue();
+    }
+
+    /**
+     * @see #getInt(String)
+     */
+    public boolean getBoolean(String argName)
+    {
+        checkLive();
+        int slot = slotOf(argName);
+        if (isPrimitive(slot, PrimitiveType.BOOLEAN))
+            return primitives[slot] != 0;
+        return (Boolean) getRequired(argName);
+    }
+
+    private Number getNumber(String argName)
+    {
+        return (Number) getRequired(argName);
+    }
+
+    private Object getRequired(String argName)
+    {
+        Object value = get(argName, Object.class);
+        if (value == null)
+            throw new IllegalStateException("No value for " + argName);
+        return value;
+    }
+
+    private int slotOf(String name)
+    {
+        return layout == null ? -1 : layout.slotOf(name);
+    }
+
+    private boolean isPrimitive(int slot)
+    {
+        return slot >= 0 && slots[slot] instanceof CommandArgumentDefinition<?>;
+    }
+
+    private boolean isPrimitive(int slot, PrimitiveType type)
+    {
+        return slot >= 0 && slots[slot] instanceof CommandArgumentDefinition<?> definition && definition.getPrimitiveType() == type;
+    }
+
+    /**
+     * @return The stored value or argument, {@link #NULL} for a value set to null, null if there is none
+     */
+    @Nullable
+    private Object lookup(String name)
+    {
+        int slot = slotOf(name);
+        if (slot >= 0)
+            return slots[slot] instanceof LazyValue lazy ? resolve(lazy, slot, name) : slots[slot];
+        if (values != null && values.containsKey(name))
+        {
+            Object value = values.get(name);
+            if (value instanceof LazyValue lazy)
+                return resolve(lazy, -1, name);
+            return value == null ? NULL : value;
+        }
+        return argumentMap == null ? null : argumentMap.get(name);
     }
 
     public void set(String argName, Object value)
     {
-        values.put(argName, value);
+        checkLive();
+        int slot = slotOf(argName);
+        if (slot >= 0)
+            set(slot, value);
+        else
+        {
+            if (values == null)
+                values = new HashMap<>();
+            values.put(argName, value);
+        }
+    }
+
+    private void set(int slot, Object value)
+    {
+        slots[slot] = value == null ? NULL : value;
+    }
+
+    /**
+     * Set a value computed when it is first read, such as the value of an env inserter. The function sees the value
+     * stored before, such as an argument of the same name.
+     */
+    void setLazy(int slot, Function<CommandEnvironment, Object> function)
+    {
+        slots[slot] = new LazyValue(function, slots[slot]);
     }
 
-    public void setArgument(String argName, CommandArgument<?> arg)
+    /**
+     * @see #setLazy(int, Function)
+     */
+    void setLazy(String name, Function<CommandEnvironment, Object> function)
     {
-        argumentMap.put(argName, arg);
+        int slot = slotOf(name);
+        if (slot >= 0)
+        {
+            setLazy(slot, function);
+            return;
+        }
+        if (values == null)
+            values = new HashMap<>();
+        Object previous = ABSENT;
+        if (values.containsKey(name))
+            previous = values.get(name) == null ? NULL : values.get(name);
+        values.put(name, new LazyValue(function, previous));
+    }
+
+    /**
+     * Compute the lazy values which have not been read yet, such as before the body runs on another thread
+     */
+    void resolveLazyValues()
+    {
+        for (int i = 0; i < slots.length; i++)
+        {
+            if (slots[i] instanceof LazyValue lazy)
+                resolve(lazy, i, null);
+        }
+        if (values != null)
+        {
+            for (String name : List.copyOf(values.keySet()))
+            {
+                if (values.get(name) instanceof LazyValue lazy)
+                    resolve(lazy, -1, name);
+            }
+        }
+    }
+
+    /**
+     * @return The computed value, or {@link #NULL}
+     */
+    private Object resolve(LazyValue lazy, int slot, String name)
+    {
+        // Show the previous value to the function, then replace the lazy value with the result
+        storeRaw(slot, name, lazy.previous);
+        Object value;
+        try
+        {
+            value = lazy.function.apply(this);
+        }
+        catch (RuntimeException | Error e)
+        {
+            storeRaw(slot, name, lazy);
+            throw e;
+        }
+        Object stored = value == null ? NULL : value;
+        storeRaw(slot, name, stored);
+        return stored;
+    }
+
+    private void storeRaw(int slot, String name, Object stored)
+    {
+        if (slot >= 0)
+            slots[slot] = stored;
+        else if (stored == ABSENT)
+            values.remove(name);
+        else
+            values.put(name, stored == NULL ? null : stored);
+    }
+
+    public <T> void setArgument(String argName, CommandArgument<T> arg)
+    {
+        checkLive();
+        storeArgument(argName, slotOf(argName), new ArgumentValue<>(null, arg.get(), arg));
+    }
+
+    /**
+     * Store a parsed argument value. The argument class is only instantiated if the value is requested as a
+     * {@link CommandArgument}.
+     */
+    <T> void setArgument(CommandArgumentDefinition<T> definition, T value)
+    {
+        storeArgument(definition.getName(), definition.slotIn(layout), new ArgumentValue<>(definition, value, null));
+    }
+
+    /**
+     * Store the value of a primitive argument, without boxing it if the argument has a slot
+     */
+    void setPrimitive(CommandArgumentDefinition<?> definition, long bits)
+    {
+        int slot = definition.slotIn(layout);
+        if (slot < 0)
+        {
+            storeArgument(definition.getName(), -1,
+                    new ArgumentValue<>((CommandArgumentDefinition<Object>) definition, definition.getPrimitiveType().box(bits), null));
+            return;
+        }
+        if (!isArgument(slots[slot]))
+            return;
+        if (primitives == null)
+            primitives = new long[slots.length];
+        primitives[slot] = bits;
+        slots[slot] = definition;
+    }
+
+    /**
+     * Values set by name take precedence over arguments of the same name
+     */
+    private void storeArgument(String name, int slot, ArgumentValue<?> argument)
+    {
+        if (slot >= 0)
+        {
+            if (isArgument(slots[slot]))
+                slots[slot] = argument;
+            return;
+        }
+        if (argumentMap == null)
+            argumentMap = new HashMap<>();
+        argumentMap.put(name, argument);
+    }
+
+    /**
+     * Whether a slot is empty or holds an argument, rather than a value set by name
+     */
+    private static boolean isArgument(@Nullable Object stored)
+    {
+        return stored == null || stored instanceof ArgumentValue || stored instanceof CommandArgumentDefinition;
+    }
+
+    /**
+     * Keep this environment valid once the command has returned, for bodies storing it for later use. When the tree
+     * pools its environments, the environment is otherwise released once the body returns, and using it then throws
+     * an {@link IllegalStateException}. Environments of async bodies and bodies returning futures are retained
+     * automatically.
+     *
+     * @see CommandBuilder#pooledEnvironments(boolean)
+     */
+    public CommandEnvironment retain()
+    {
+        checkLive();
+        retained = true;
+        return this;
+    }
+
+    boolean isRetained()
+    {
+        return retained;
+    }
+
+    private void checkLive()
+    {
+        if (released)
+            throw new IllegalStateException("The environment of a pooled execution was used after the command returned. "
+                    + "Call CommandEnvironment#retain() in the body to keep it.");
+    }
+
+    /**
+     * Environment of the next pooled execution of the thread, using the storage of this released environment
+     */
+    CommandEnvironment recycle(final CommandSender sender, @Nullable final Plugin plugin)
+    {
+        return new CommandEnvironment(this, sender, plugin);
+    }
+
+    /**
+     * Bind the environment of a completion session to the sender of a new keystroke
+     */
+    void reuse(final CommandSender sender, @Nullable final Plugin plugin)
+    {
+        this.sender = sender;
+        this.plugin = plugin;
+    }
+
+    /**
+     * Copy of the values of this environment bound to a sender, such as for an async completion that may outlive the
+     * keystroke which started it
+     */
+    CommandEnvironment copyFor(final CommandSender sender)
+    {
+        CommandEnvironment copy = new CommandEnvironment(sender, layout);
+        copy.plugin = plugin;
+        System.arraycopy(slots, 0, copy.slots, 0, slots.length);
+        if (primitives != null)
+            copy.primitives = primitives.clone();
+        if (values != null)
+            copy.values = new HashMap<>(values);
+        if (argumentMap != null)
+            copy.argumentMap = new HashMap<>(argumentMap);
+        return copy;
+    }
+
+    /**
+     * Drop the values of the pooled execution once it has returned. This environment cannot be used anymore, its
+     * storage is given to the next execution by {@link #recycle(CommandSender, Plugin)}.
+     */
+    void release()
+    {
+        released = true;
+        sender = null;
+        plugin = null;
+        Arrays.fill(slots, null);
+        if (values != null)
+            values.clear();
+        if (argumentMap != null)
+            argumentMap.clear();
+        clearCachedResults();
+    }
+
+    /**
+     * @return The result computed for the key during this execution, or {@link #NO_RESULT}
+     */
+    Object getCachedResult(String key)
+    {
+        if (cachedResults == null)
+            return NO_RESULT;
+        return cachedResults.getOrDefault(key, NO_RESULT);
+    }
+
+    void putCachedResult(String key, Object result)
+    {
+        if (cachedResults == null)
+            cachedResults = new HashMap<>();
+        cachedResults.put(key, result);
+    }
+
+    /**
+     * Forget the results of cached functions, such as when the environment of a completion session is used for a new
+     * keystroke
+     */
+    void clearCachedResults()
+    {
+        if (cachedResults != null)
+            cachedResults.clear();
+    }
+
+    @Nullable
+    EnvironmentLayout getLayout()
+    {
+        return layout;
     }
 
     public CommandSender getSender()
     {
+        checkLive();
         return sender;
     }
 
     public Player getSenderAsPlayer()
     {
+        checkLive();
         return (Player) sender;
     }
+
+    /**
+     * Plugin owning the executed command, if registered
+     */
+    @Nullable
+    public Plugin getPlugin()
+    {
+        checkLive();
+        return plugin;
+    }
+
+    void setPlugin(@Nullable final Plugin plugin)
+    {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Run a task on the server thread, from an async command
+     *
+     * @see ServerThread#run(Plugin, Runnable)
+     */
+    public CompletableFuture<Void> runOnServerThread(Runnable task)
+    {
+        checkLive();
+        return ServerThread.run(Objects.requireNonNull(plugin, "The command is not registered by a plugin"), task);
+    }
+
+    /**
+     * Compute a value on the server thread, from an async command
+     *
+     * @see ServerThread#call(Plugin, Supplier)
+     */
+    public <T> CompletableFuture<T> callOnServerThread(Supplier<T> task)
+    {
+        checkLive();
+        return ServerThread.call(Objects.requireNonNull(plugin, "The command is not registered by a plugin"), task);
+    }
+
+    private record LazyValue(Function<CommandEnvironment, Object> function, @Nullable Object previous) {
+    }
+
+    private static final class ArgumentValue<T> {
+        @Nullable
+        private final CommandArgumentDefinition<T> definition;
+        private final T value;
+        @Nullable
+        private CommandArgument<T> wrapper;
+
+        private ArgumentValue(@Nullable final CommandArgumentDefinition<T> definition, final T value,
+                              @Nullable final CommandArgument<T> wrapper)
+        {
+            this.definition = definition;
+            this.value = value;
+            this.wrapper = wrapper;
+        }
+
+        private CommandArgument<T> getWrapper()
+        {
+            if (wrapper == null)
+                wrapper = Objects.requireNonNull(definition).wrapValue(value);
+            return wrapper;
+        }
+    }
 }
@@ -1,46 +1,148 @@
 package onl.tesseract.commandBuilder;
 
+import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.Setter;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Cursor over the args of an executed command, shared by the command and its subcommands. Args come either from the
+ * args split by Bukkit, or from a tokenized {@link CommandLine}.
+ */
 @Getter
 class CommandExecutionContext {
 
-    private final CommandEnvironment environment;
+    private CommandEnvironment environment;
     private final CommandDefinition rootCommand;
-    private final String[] args;
+    @Nullable
+    private String[] args;
+    @Nullable
+    private CommandLine line;
     private int currentArgIndex;
+    /**
+     * Subcommand designated by the next arg, found while parsing the arguments of its parent
+     */
+    @Nullable
+    @Setter(AccessLevel.PACKAGE)
+    private CommandDefinition subCommand;
 
     public CommandExecutionContext(final CommandEnvironment environment, final CommandDefinition rootCommand, final String[] args)
     {
         this.environment = environment;
         this.rootCommand = rootCommand;
         this.args = args;
+        this.line = null;
+    }
+
+    public CommandExecutionContext(final CommandEnvironment environment, final CommandDefinition rootCommand, final CommandLine line)
+    {
+        this.environment = environment;
+        this.rootCommand = rootCommand;
+        this.args = null;
+        this.line = line;
+    }
+
+    /**
+     * Context without args, reused by the executions of a thread with {@link #reset}
+     */
+    CommandExecutionContext(final CommandDefinition rootCommand)
+    {
+        this.rootCommand = rootCommand;
+    }
+
+    /**
+     * Start a new execution over either args or a command line
+     */
+    CommandExecutionContext reset(@Nullable final CommandEnvironment environment, @Nullable final String[] args,
+                                  @Nullable final CommandLine line)
+    {
+        this.environment = environment;
+        this.args = args;
+        this.line = line;
+        this.currentArgIndex = 0;
+        this.subCommand = null;
+        return this;
+    }
+
+    private int argCount()
+    {
+        return line != null ? line.size() : args.length;
+    }
+
+    private String argAt(int index)
+    {
+        return line != null ? line.value(index) : args[index];
     }
 
     @Nullable
     public String nextArg()
     {
-        if (currentArgIndex == args.length)
+        if (currentArgIndex == argCount())
             return null;
-        return args[currentArgIndex++];
+        return argAt(currentArgIndex++);
     }
 
     @Nullable
     public String peekNextArg()
     {
-        if (currentArgIndex == args.length)
+        if (currentArgIndex == argCount())
             return null;
-        return args[currentArgIndex];
+        return argAt(currentArgIndex);
+    }
+
+    /**
+     * @param offset Position of the arg after the next one, 0 for the next arg
+     */
+    @Nullable
+    public String peekArg(int offset)
+    {
+        int index = currentArgIndex + offset;
+        return index < argCount() ? argAt(index) : null;
     }
 
     public boolean hasNextArg()
     {
-        return currentArgIndex < args.length;
+        return currentArgIndex < argCount();
     }
 
     public int countRemainingArgs()
     {
-        return args.length - currentArgIndex;
+        return argCount() - currentArgIndex;
+    }
+
+    /**
+     * Column of the next arg in the command line, starting at 1
+     *
+     * @return -1 if the args do not come from a command line, or if there are no remaining args
+     */
+    public int nextArgColumn()
+    {
+        return line != null && hasNextArg() ? line.column(currentArgIndex) : -1;
+    }
+
+    /**
+     * Consume all the remaining args, as the text they were typed as. Greedy arguments read their input this way,
+     * from the shared cursor.
+     *
+     * @return Remaining args separated by spaces, or an empty string if there are none
+     */
+    public String remainingText()
+    {
+        int from = currentArgIndex;
+        int count = argCount();
+        currentArgIndex = count;
+        if (from >= count)
+            return "";
+        if (line != null)
+            return line.tail(from);
+        if (from == count - 1)
+            return args[from];
+        int length = count - from - 1;
+        for (int i = from; i < count; i++)
+            length += args[i].length();
+        StringBuilder text = new StringBuilder(length).append(args[from]);
+        for (int i = from + 1; i < count; i++)
+            text.append(' ').append(args[i]);
+        return text.toString();
     }
 }
@@ -1,7 +1,10 @@
 package onl.tesseract.commandBuilder;
 
+/**
+ * Provides the instances on which command methods are invoked
+ */
 @FunctionalInterface
-interface CommandInstanceFactory {
+public interface CommandInstanceFactory {
 
     Object getClassInstance(Class<?> clazz);
 }
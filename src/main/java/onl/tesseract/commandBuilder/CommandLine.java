@@ -0,0 +1,183 @@
+package onl.tesseract.commandBuilder;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Tokens of a raw command line. Tokens are separated by spaces, single or double quotes group words into one token,
+ * and a backslash escapes the next character. Tokens are recorded as offsets in the line, their value is only extracted
+ * when read.
+ */
+public final class CommandLine {
+    private static final byte QUOTED = 1;
+    private static final byte ESCAPED = 2;
+    private static final byte UNCLOSED = 4;
+
+    private final CharSequence line;
+    private int size;
+    /**
+     * Offsets of the tokens in the line, including quotes. End offsets are exclusive.
+     */
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private byte[] flags = new byte[8];
+    private int unclosedQuote = -1;
+
+    private CommandLine(final CharSequence line)
+    {
+        this.line = line;
+    }
+
+    public static CommandLine tokenize(@NotNull final CharSequence line)
+    {
+        CommandLine tokens = new CommandLine(line);
+        int length = line.length();
+        int i = 0;
+        while (i < length)
+        {
+            char c = line.charAt(i);
+            if (c == ' ')
+            {
+                i++;
+                continue;
+            }
+            int start = i;
+            byte tokenFlags = 0;
+            if (c == '"' || c == '\'')
+            {
+                tokenFlags |= QUOTED;
+                i++;
+                while (i < length && line.charAt(i) != c)
+                {
+                    if (line.charAt(i) == '\\' && i + 1 < length)
+                    {
+                        tokenFlags |= ESCAPED;
+                        i++;
+                    }
+                    i++;
+                }
+                if (i < length)
+                    i++; // Closing quote
+                else
+                {
+                    tokenFlags |= UNCLOSED;
+                    tokens.unclosedQuote = start;
+                }
+            }
+            else
+            {
+                while (i < length && line.charAt(i) != ' ')
+                {
+                    if (line.charAt(i) == '\\' && i + 1 < length)
+                    {
+                        tokenFlags |= ESCAPED;
+                        i++;
+                    }
+                    i++;
+                }
+            }
+            tokens.add(start, i, tokenFlags);
+        }
+        return tokens;
+    }
+
+    private void add(int start, int end, byte tokenFlags)
+    {
+        if (size == starts.length)
+        {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            flags = Arrays.copyOf(flags, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        flags[size] = tokenFlags;
+        size++;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Value of a token, without its quotes and escape characters
+     */
+    public String value(int index)
+    {
+        checkIndex(index);
+        int start = starts[index];
+        int end = ends[index];
+        byte tokenFlags = flags[index];
+        if ((tokenFlags & QUOTED) != 0)
+        {
+            start++;
+            if ((tokenFlags & UNCLOSED) == 0)
+                end--;
+        }
+        if ((tokenFlags & ESCAPED) == 0)
+            return line.subSequence(start, end).toString();
+
+        StringBuilder value = new StringBuilder(end - start);
+        for (int i = start; i < end; i++)
+        {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < end)
+                c = line.charAt(++i);
+            value.append(c);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Text of the line from a token to the end, as typed, for greedy arguments
+     */
+    public String tail(int index)
+    {
+        checkIndex(index);
+        return line.subSequence(starts[index], line.length()).toString();
+    }
+
+    /**
+     * Whether a token is a flag, such as "-f" or "--force". Quoted tokens and negative numbers are not flags.
+     */
+    public boolean isFlag(int index)
+    {
+        checkIndex(index);
+        int start = starts[index];
+        if ((flags[index] & QUOTED) != 0 || ends[index] - start < 2 || line.charAt(start) != '-')
+            return false;
+        char next = line.charAt(start + 1);
+        return next == '-' ? ends[index] - start > 2 : Character.isLetter(next);
+    }
+
+    public boolean isQuoted(int index)
+    {
+        checkIndex(index);
+        return (flags[index] & QUOTED) != 0;
+    }
+
+    /**
+     * Column of the first character of a token in the line, starting at 1
+     */
+    public int column(int index)
+    {
+        checkIndex(index);
+        return starts[index] + 1;
+    }
+
+    /**
+     * Column of the opening quote of the last token if it is not closed, -1 otherwise
+     */
+    public int getUnclosedQuoteColumn()
+    {
+        return unclosedQuote < 0 ? -1 : unclosedQuote + 1;
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Token " + index + " out of " + size);
+    }
+}
@@ -0,0 +1,84 @@
+package onl.tesseract.commandBuilder;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Slots of the values of a {@link CommandEnvironment}, assigned when a command tree is built. Each argument and env
+ * inserter key of the tree gets the index of its value, so that environments store values in a flat array. Names are
+ * resolved with an open-addressed table.
+ */
+final class EnvironmentLayout {
+    private String[] keys = new String[16];
+    private int[] slots = new int[16];
+    private int size;
+
+    /**
+     * Get the slot of a name, assigning a new one if the name has none
+     */
+    int add(@NotNull final String name)
+    {
+        int existing = slotOf(name);
+        if (existing >= 0)
+            return existing;
+        // Keep the table at most half full
+        if ((size + 1) * 2 > keys.length)
+            grow();
+        insert(name, size);
+        return size++;
+    }
+
+    /**
+     * @return The slot of the name, or -1 if it has none
+     */
+    int slotOf(@NotNull final String name)
+    {
+        int mask = keys.length - 1;
+        int i = hash(name) & mask;
+        while (true)
+        {
+            String key = keys[i];
+            if (key == null)
+                return -1;
+            if (key == name || key.equals(name))
+                return slots[i];
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Number of slots of the environments
+     */
+    int size()
+    {
+        return size;
+    }
+
+    private void insert(String name, int slot)
+    {
+        int mask = keys.length - 1;
+        int i = hash(name) & mask;
+        while (keys[i] != null)
+            i = (i + 1) & mask;
+        keys[i] = name;
+        slots[i] = slot;
+    }
+
+    private void grow()
+    {
+        String[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new String[oldKeys.length * 2];
+        slots = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != null)
+                insert(oldKeys[i], oldSlots[i]);
+        }
+    }
+
+    private static int hash(String name)
+    {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,58 @@
+package onl.tesseract.commandBuilder;
+
+import onl.tesseract.commandBuilder.exception.CommandBuildException;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Command tree generated at compile time by the commandbuilder-processor annotation processor, for a class annotated
+ * with {@link onl.tesseract.commandBuilder.annotation.Command}. A generated tree builds the same command as the
+ * annotation readers, with direct method calls instead of reflection.
+ * <p>
+ * The generated class of {@code com.example.Outer.Inner} is {@code com.example.Outer_Inner_CommandTree}.
+ * </p>
+ */
+public interface GeneratedCommandTree {
+
+    String SUFFIX = "_CommandTree";
+
+    CommandBuilder builder(CommandInstanceFactory instances);
+
+    /**
+     * Name of the generated command tree class of a command class
+     */
+    static String getGeneratedName(Class<?> commandClass)
+    {
+        String packageName = commandClass.getPackageName();
+        String binaryName = commandClass.getName().substring(packageName.isEmpty() ? 0 : packageName.length() + 1);
+        return (packageName.isEmpty() ? "" : packageName + ".") + binaryName.replace('$', '_') + SUFFIX;
+    }
+
+    /**
+     * Get the generated command tree of a command class
+     *
+     * @return The generated tree, or null if none was generated for this class
+     */
+    @Nullable
+    static GeneratedCommandTree find(Class<?> commandClass) throws CommandBuildException
+    {
+        Class<?> generated;
+        try
+        {
+            generated = Class.forName(getGeneratedName(commandClass), true, commandClass.getClassLoader());
+        }
+        catch (ClassNotFoundException e)
+        {
+            return null;
+        }
+        if (!GeneratedCommandTree.class.isAssignableFrom(generated))
+            return null;
+        try
+        {
+            return (GeneratedCommandTree) generated.getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new CommandBuildException("Cannot instantiate generated command tree " + generated.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Help pages of a command. Help lines are rendered once, when the command is built. Pages are assembled for each set
+ * of subcommands visible to a sender, and kept in a bounded LRU cache.
+ */
+final class HelpPages {
+
+    private static final int LINES_PER_PAGE = 8;
+    private static final int CACHE_SIZE = 16;
+    private static final String BOXING = "================";
+    private static final String FOOTER = ChatColor.YELLOW + "\\".repeat(16) + ChatColor.GOLD + " • "
+            + ChatColor.YELLOW + "/".repeat(16);
+
+    private final String header;
+    @Nullable
+    private final String descriptionLine;
+    private final CommandDefinition[] subCommands;
+    private final String[] subCommandLines;
+    /**
+     * Pages by visible subcommands. Pages of an entry are assembled lazily.
+     */
+    private final Map<BitSet, String[][]> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<BitSet, String[][]> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    HelpPages(String commandName, @Nullable String descriptionLine, CommandDefinition[] subCommands, String[] subCommandLines)
+    {
+        this.header = ChatColor.YELLOW + BOXING + ChatColor.GOLD + " " + commandName + " " + ChatColor.YELLOW + BOXING;
+        this.descriptionLine = descriptionLine;
+        this.subCommands = subCommands;
+        this.subCommandLines = subCommandLines;
+    }
+
+    /**
+     * Get a help page, listing the subcommands the sender has the permission to use
+     *
+     * @throws IllegalArgumentException If the page index is out of range
+     */
+    @NotNull
+    String[] getPage(CommandSender sender, int page)
+    {
+        BitSet visible = new BitSet(subCommands.length);
+        for (int i = 0; i < subCommands.length; i++)
+        {
+            if (subCommands[i].hasPermission(sender))
+                visible.set(i);
+        }
+
+        synchronized (cache)
+        {
+            String[][] pages = cache.get(visible);
+            if (pages == null)
+            {
+                int lineCount = visible.cardinality() + (descriptionLine == null ? 0 : 1);
+                pages = new String[lineCount / LINES_PER_PAGE + 1][];
+                cache.put(visible, pages);
+            }
+            if (page < 0 || page >= pages.length)
+                throw new IllegalArgumentException("Page index must be between 0 and pageCount - 1");
+
+            if (pages[page] == null)
+                pages[page] = renderPage(getLines(visible), page, pages.length);
+            return pages[page].clone();
+        }
+    }
+
+    private String[] getLines(BitSet visible)
+    {
+        String[] lines = new String[visible.cardinality() + (descriptionLine == null ? 0 : 1)];
+        int i = 0;
+        if (descriptionLine != null)
+            lines[i++] = descriptionLine;
+        for (int sub = visible.nextSetBit(0); sub >= 0; sub = visible.nextSetBit(sub + 1))
+            lines[i++] = subCommandLines[sub];
+        return lines;
+    }
+
+    private String[] renderPage(String[] lines, int page, int totalPageCount)
+    {
+        int start = page * LINES_PER_PAGE;
+        int end = (page + 1) * LINES_PER_PAGE + 1;
+        end = Math.min(lines.length, end);
+
+        String[] res = new String[4 + (end - start)];
+        Arrays.fill(res, "");
+        res[0] = header;
+        res[1] = ChatColor.GRAY + " --> help page " + (page + 1) + "/" + totalPageCount;
+        // Copy command usages
+        System.arraycopy(lines, start, res, 2, end - start);
+        res[res.length - 2] = "";
+        res[res.length - 1] = FOOTER;
+        return res;
+    }
+}
@@ -14,7 +14,7 @@ class IntegerArgument extends CommandArgument<Integer> {
     @Override
     public void define(final CommandArgumentBuilderSteps.@NotNull Parser<Integer> builder)
     {
-        builder.parser((input, env) -> {
+        builder.intParser((input, env) -> {
                    int i = Integer.parseInt(input);
                    if (i == -1)
                        throw new IllegalStateException("Error testing behavior");
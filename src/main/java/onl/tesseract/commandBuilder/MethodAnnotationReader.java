@@ -7,7 +7,9 @@ import onl.tesseract.commandBuilder.exception.CommandBuildException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 final class MethodAnnotationReader extends AnnotationReader {
     private final Method method;
@@ -29,6 +31,12 @@ final class MethodAnnotationReader extends AnnotationReader {
                : name;
     }
 
+    @Override
+    String readSource()
+    {
+        return method.getDeclaringClass().getName() + "#" + method.getName();
+    }
+
     @Override
     List<CommandArgumentDefinition<?>> readArguments() throws CommandBuildException
     {
@@ -41,8 +49,14 @@ final class MethodAnnotationReader extends AnnotationReader {
     @Override
     Consumer<CommandEnvironment> readCommandBody()
     {
-        return env -> new MethodInvoker(method, instanceFactory.getClassInstance(method.getDeclaringClass()))
-                .invoke(env);
+        MethodInvoker invoker = bodyInvoker(method);
+        return invoker::invoke;
+    }
+
+    @Override
+    Function<CommandEnvironment, CompletionStage<?>> readFutureBody()
+    {
+        return readFutureBody(method);
     }
 
     @Override
@@ -2,70 +2,171 @@ package onl.tesseract.commandBuilder;
 
 import onl.tesseract.commandBuilder.annotation.Argument;
 import onl.tesseract.commandBuilder.annotation.Env;
+import onl.tesseract.commandBuilder.exception.CommandBuildException;
+import onl.tesseract.commandBuilder.exception.CommandExecutionException;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * Invokes an annotated command method with parameters injected from a {@link CommandEnvironment}.
+ * <p>
+ * Parameter bindings are compiled once, when the invoker is created, into a method handle taking the environment.
+ * Invocations do not use reflection nor allocate an argument array, and primitive parameters are read from the
+ * environment without boxing.
+ * </p>
+ */
 class MethodInvoker {
 
+    private static final MethodHandle GET;
+    private static final MethodHandle GET_SENDER;
+    private static final MethodHandle GET_SENDER_AS_PLAYER;
+    /**
+     * Getters of primitive values, by parameter type
+     */
+    private static final Map<Class<?>, MethodHandle> PRIMITIVE_GETTERS = new HashMap<>();
+
+    static
+    {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try
+        {
+            GET = lookup.findVirtual(CommandEnvironment.class, "get", MethodType.methodType(Object.class, String.class, Class.class));
+            GET_SENDER = lookup.findVirtual(CommandEnvironment.class, "getSender", MethodType.methodType(CommandSender.class));
+            GET_SENDER_AS_PLAYER = lookup.findVirtual(CommandEnvironment.class, "getSenderAsPlayer", MethodType.methodType(Player.class));
+            PRIMITIVE_GETTERS.put(int.class, lookup.findVirtual(CommandEnvironment.class, "getInt", MethodType.methodType(int.class, String.class)));
+            PRIMITIVE_GETTERS.put(long.class, lookup.findVirtual(CommandEnvironment.class, "getLong", MethodType.methodType(long.class, String.class)));
+            PRIMITIVE_GETTERS.put(float.class, lookup.findVirtual(CommandEnvironment.class, "getFloat", MethodType.methodType(float.class, String.class)));
+            PRIMITIVE_GETTERS.put(double.class, lookup.findVirtual(CommandEnvironment.class, "getDouble", MethodType.methodType(double.class, String.class)));
+            PRIMITIVE_GETTERS.put(boolean.class, lookup.findVirtual(CommandEnvironment.class, "getBoolean", MethodType.methodType(boolean.class, String.class)));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final Method methodToInvoke;
-    private final Object instance;
+    private final boolean isStatic;
+    private final CommandInstanceFactory instanceFactory;
+    /**
+     * Handle of type (Object, CommandEnvironment)Object, taking the receiver and the environment
+     */
+    private final MethodHandle handle;
+    @Nullable
+    private Object instance;
 
-    public MethodInvoker(final Method methodToInvoke, final Object instance)
+    public MethodInvoker(final Method methodToInvoke, final CommandInstanceFactory instanceFactory)
     {
         this.methodToInvoke = methodToInvoke;
-        this.instance = instance;
+        this.isStatic = Modifier.isStatic(methodToInvoke.getModifiers());
+        this.instanceFactory = instanceFactory;
+        this.handle = compile(methodToInvoke, isStatic);
     }
 
-    @Nullable
-    public Object invoke(CommandEnvironment env)
+    /**
+     * Handle of type (CommandEnvironment)T resolving the value injected into a parameter of type T
+     */
+    private static MethodHandle binding(final Parameter parameter)
     {
-        methodToInvoke.setAccessible(true);
-        Parameter[] parameters = methodToInvoke.getParameters();
-        Object[] objects = new Object[parameters.length];
+        Class<?> type = parameter.getType();
+        Argument annotation = parameter.getAnnotation(Argument.class);
+        Env envAnnotation = parameter.getAnnotation(Env.class);
+        String name = annotation != null ? annotation.value() : envAnnotation != null ? envAnnotation.key() : null;
+        if (name != null)
+        {
+            MethodHandle primitiveGetter = PRIMITIVE_GETTERS.get(type);
+            if (primitiveGetter != null)
+                return MethodHandles.insertArguments(primitiveGetter, 1, name);
+            return MethodHandles.insertArguments(GET, 1, name, type)
+                                .asType(MethodType.methodType(type, CommandEnvironment.class));
+        }
+        if (type == CommandEnvironment.class)
+            return MethodHandles.identity(CommandEnvironment.class);
+        if (type == CommandSender.class)
+            return GET_SENDER;
+        if (type == Player.class)
+            return GET_SENDER_AS_PLAYER;
+        return MethodHandles.empty(MethodType.methodType(type, CommandEnvironment.class));
+    }
 
-        for (int i = 0; i < parameters.length; i++)
+    private static MethodHandle compile(final Method method, final boolean isStatic)
+    {
+        MethodHandle handle;
+        try
         {
-            Parameter parameter = parameters[i];
-            Argument annotation = parameter.getAnnotation(Argument.class);
-            Env envAnnotation = parameter.getAnnotation(Env.class);
-            if (annotation != null)
-            {
-                Object o = env.get(annotation.value(), parameter.getType());
-                objects[i] = o;
-            }
-            else if (envAnnotation != null)
-            {
-                Object o = env.get(envAnnotation.key(), parameter.getType());
-                objects[i] = o;
-            }
-            else if (parameter.getType() == CommandEnvironment.class)
-                objects[i] = env;
-            else if (parameter.getType() == CommandSender.class)
-                objects[i] = env.getSender();
-            else if (parameter.getType() == Player.class)
-                objects[i] = env.getSenderAsPlayer();
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
         }
+        catch (IllegalAccessException | RuntimeException e)
+        {
+            throw new CommandBuildException("Cannot access method " + method.getName(), e);
+        }
+        // Uniform shape: receiver first, even for static methods
+        if (isStatic)
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        else
+            handle = handle.asType(handle.type().changeParameterType(0, Object.class));
+
+        // (receiver, p1, ..., pn) -> (receiver, env, ..., env) -> (receiver, env)
+        Parameter[] parameters = method.getParameters();
+        MethodHandle[] bindings = new MethodHandle[parameters.length];
+        for (int i = 0; i < parameters.length; i++)
+            bindings[i] = binding(parameters[i]);
+        handle = MethodHandles.filterArguments(handle, 1, bindings);
+        int[] reorder = new int[parameters.length + 1];
+        Arrays.fill(reorder, 1, reorder.length, 1);
+        handle = MethodHandles.permuteArguments(handle,
+                MethodType.methodType(handle.type().returnType(), Object.class, CommandEnvironment.class), reorder);
+        return handle.asType(MethodType.methodType(Object.class, Object.class, CommandEnvironment.class));
+    }
 
+    /**
+     * @throws CommandExecutionException If the method threw a checked exception. Runtime exceptions and errors are
+     * rethrown as is.
+     */
+    @Nullable
+    public Object invoke(CommandEnvironment env)
+    {
+        Object target = isStatic ? null : getInstance();
         try
         {
-            return methodToInvoke.invoke(instance, objects);
+            return (Object) handle.invokeExact(target, env);
         }
-        catch (IllegalAccessException e)
+        catch (RuntimeException | Error e)
         {
-            e.printStackTrace();
+            throw e;
         }
-        catch (InvocationTargetException e) {
-            if (e.getCause() != null) {
-                e.getCause().printStackTrace();
-            } else {
-                e.printStackTrace();
-            }
+        catch (Throwable e)
+        {
+            throw new CommandExecutionException(e);
         }
-        return null;
+    }
+
+    private Object getInstance()
+    {
+        Object target = instance;
+        if (target == null)
+        {
+            // Resolved lazily: the instance may be the command context being constructed
+            target = instanceFactory.getClassInstance(methodToInvoke.getDeclaringClass());
+            instance = target;
+        }
+        return target;
+    }
+
+    public Method getMethod()
+    {
+        return methodToInvoke;
     }
 }
@@ -1,32 +1,83 @@
 package onl.tesseract.commandBuilder;
 
 import lombok.Getter;
+import org.bukkit.entity.Player;
 import org.bukkit.permissions.Permissible;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Getter
 public final class Permission {
-    private static final Map<String, Permission> permissionPool = new HashMap<>();
-    public static final Permission NONE = newPermission("", null);
+    private static final Map<String, Permission> permissionPool = new ConcurrentHashMap<>();
+    /**
+     * Resolved permissions by player UUID, when the decision cache is enabled
+     */
+    private static final Map<UUID, Decisions> decisionCache = new ConcurrentHashMap<>();
+    /**
+     * Size of the decision cache above which the decisions of players who are gone are dropped
+     */
+    private static volatile int sweepThreshold = 64;
+    private static volatile boolean cacheEnabled = false;
+    public static final Permission NONE = get("");
 
     @NotNull
     private final String name;
     @Nullable
     private final Permission parent;
+    /**
+     * Glob permission of the parent, such as "a.b.*" for "a.b.c"
+     */
+    @Nullable
+    private final String parentGlob;
 
     private Permission(@NotNull final String name, @Nullable final Permission parent)
     {
         this.name = name;
         this.parent = parent;
+        this.parentGlob = parent == null ? null : parent.name + ".*";
     }
 
     public boolean hasPermission(@NotNull final Permissible permissible)
     {
-        if (permissible.isOp() || this == NONE)
+        if (this == NONE)
+            return true;
+        // Only players are cached, by UUID
+        if (!cacheEnabled || !(permissible instanceof Player player))
+            return resolve(permissible);
+
+        Decisions decisions = decisionCache.get(player.getUniqueId());
+        // A player who joined again is a new object, with permissions computed again
+        if (decisions == null || decisions.player.get() != player)
+            decisions = newDecisions(player);
+        Boolean decision = decisions.byPermission.get(this);
+        if (decision == null)
+        {
+            decision = resolve(permissible);
+            decisions.byPermission.put(this, decision);
+        }
+        return decision;
+    }
+
+    private static Decisions newDecisions(Player player)
+    {
+        Decisions decisions = new Decisions(new WeakReference<>(player), new ConcurrentHashMap<>());
+        decisionCache.put(player.getUniqueId(), decisions);
+        if (decisionCache.size() > sweepThreshold)
+        {
+            decisionCache.values().removeIf(entry -> entry.player.get() == null);
+            sweepThreshold = Math.max(64, decisionCache.size() * 2);
+        }
+        return decisions;
+    }
+
+    private boolean resolve(@NotNull final Permissible permissible)
+    {
+        if (permissible.isOp())
             return true;
 
         if (permissible.isPermissionSet(this.name))
@@ -34,9 +85,8 @@ public final class Permission {
 
         if (this.parent == null)
             return false;
-        String globPermission = this.parent.name + ".*";
-        if (permissible.isPermissionSet(globPermission))
-            return permissible.hasPermission(globPermission);
+        if (permissible.isPermissionSet(parentGlob))
+            return permissible.hasPermission(parentGlob);
         return this.parent.hasPermission(permissible);
     }
 
@@ -46,24 +96,69 @@ public final class Permission {
         return Permission.get(this.name + "." + name);
     }
 
-    private static Permission newPermission(@NotNull final String name, @Nullable final Permission parent)
-    {
-        Permission permission = new Permission(name, parent);
-        permissionPool.put(name, permission);
-        return permission;
-    }
-
+    /**
+     * Get the pooled permission of the given name, creating it and its parents if needed. Safe to call from any
+     * thread.
+     */
     @NotNull
     public static Permission get(@NotNull final String name)
     {
-        if (permissionPool.containsKey(name))
-            return permissionPool.get(name);
+        Permission permission = permissionPool.get(name);
+        if (permission != null)
+            return permission;
 
+        // Resolve the parent first: computeIfAbsent must not update the pool recursively
         int separatorIndex = name.lastIndexOf('.');
-        if (separatorIndex == -1)
-            return newPermission(name, null);
+        Permission parent = separatorIndex == -1 ? null : Permission.get(name.substring(0, separatorIndex));
+        return permissionPool.computeIfAbsent(name, key -> new Permission(key, parent));
+    }
+
+    /**
+     * Enable or disable the caching of resolved permissions, per player and permission. When enabled, plugins have to
+     * call {@link #invalidateCache(UUID)} when the permissions or the op status of a player change, such as when a
+     * permission plugin recalculates them, and when the player quits. The decisions of a player who joins again are
+     * not reused, and those of players who are gone are eventually dropped.
+     */
+    public static void setCacheEnabled(final boolean enabled)
+    {
+        cacheEnabled = enabled;
+        if (!enabled)
+            decisionCache.clear();
+    }
+
+    public static boolean isCacheEnabled()
+    {
+        return cacheEnabled;
+    }
+
+    /**
+     * Discard the cached permissions of a permissible
+     */
+    public static void invalidateCache(@NotNull final Permissible permissible)
+    {
+        if (permissible instanceof Player player)
+            invalidateCache(player.getUniqueId());
+    }
+
+    /**
+     * Discard the cached permissions of a player
+     */
+    public static void invalidateCache(@NotNull final UUID player)
+    {
+        decisionCache.remove(player);
+    }
+
+    /**
+     * Discard all cached permissions
+     */
+    public static void invalidateCache()
+    {
+        decisionCache.clear();
+    }
 
-        Permission parent = Permission.get(name.substring(0, separatorIndex));
-        return newPermission(name, parent);
+    /**
+     * Resolved permissions of a player. The player is weakly referenced, to recognize a player who joined again.
+     */
+    private record Decisions(WeakReference<Player> player, Map<Permission, Boolean> byPermission) {
     }
 }
@@ -2,6 +2,7 @@ package onl.tesseract.commandBuilder;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.time.Duration;
 import java.util.function.Predicate;
 
 public class PredicateDefinition {
@@ -13,6 +14,20 @@ public class PredicateDefinition {
         this.strict = strict;
     }
 
+    /**
+     * Predicate whose result is computed once per execution or tab completion, and shared by the predicates with the
+     * same key. The predicate must not depend on the arguments, since its result is reused whatever their values.
+     *
+     * @param ttl Time during which results are also reused for the same sender, zero to disable
+     *
+     * @see CachedResult
+     */
+    public static PredicateDefinition cached(@NotNull final String key, @NotNull final Predicate<CommandEnvironment> predicate,
+                                             final boolean strict, @NotNull final Duration ttl) {
+        CachedResult<Boolean> result = new CachedResult<>(key, predicate::test, ttl);
+        return new PredicateDefinition(result::apply, strict);
+    }
+
     public Predicate<CommandEnvironment> getPredicate() {
         return predicate;
     }
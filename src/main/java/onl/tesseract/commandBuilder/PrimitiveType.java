@@ -0,0 +1,54 @@
+package onl.tesseract.commandBuilder;
+
+/**
+ * Primitive type of an argument parsed without boxing. Values are stored as raw bits in a long.
+ */
+enum PrimitiveType {
+    INT(Integer.class) {
+        @Override
+        Object box(final long bits)
+        {
+            return (int) bits;
+        }
+    },
+    LONG(Long.class) {
+        @Override
+        Object box(final long bits)
+        {
+            return bits;
+        }
+    },
+    FLOAT(Float.class) {
+        @Override
+        Object box(final long bits)
+        {
+            return Float.intBitsToFloat((int) bits);
+        }
+    },
+    DOUBLE(Double.class) {
+        @Override
+        Object box(final long bits)
+        {
+            return Double.longBitsToDouble(bits);
+        }
+    },
+    BOOLEAN(Boolean.class) {
+        @Override
+        Object box(final long bits)
+        {
+            return bits != 0;
+        }
+    };
+
+    /**
+     * Type of the boxed values, which must be the value type of the argument
+     */
+    final Class<?> boxedType;
+
+    PrimitiveType(final Class<?> boxedType)
+    {
+        this.boxedType = boxedType;
+    }
+
+    abstract Object box(long bits);
+}
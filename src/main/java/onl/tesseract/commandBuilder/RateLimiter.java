@@ -0,0 +1,149 @@
+package onl.tesseract.commandBuilder;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets of the players executing a command. Each bucket is stored as the time at which it will be full again,
+ * and taking a token advances that time by the refill interval with a compare-and-set, so that no lock is taken.
+ * <br/>
+ * Full buckets hold no information and are dropped by a time wheel, advanced by the executions themselves.
+ */
+final class RateLimiter {
+    private static final int WHEEL_SIZE = 64;
+
+    private final long intervalNanos;
+    /**
+     * Time to refill an empty bucket
+     */
+    private final long burstNanos;
+    private final long tickNanos;
+    private final long origin;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<UUID, Bucket> buckets = new ConcurrentHashMap<>();
+    /**
+     * Buckets by tick at which they may be full
+     */
+    private final List<ConcurrentLinkedQueue<Bucket>> wheel;
+    private final AtomicLong currentTick = new AtomicLong();
+
+    RateLimiter(final int permits, @NotNull final Duration period)
+    {
+        this(permits, period, System::nanoTime);
+    }
+
+    RateLimiter(final int permits, @NotNull final Duration period, @NotNull final LongSupplier clock)
+    {
+        if (permits <= 0)
+            throw new IllegalArgumentException("permits must be positive");
+        if (period.isNegative() || period.isZero())
+            throw new IllegalArgumentException("period must be positive");
+        this.intervalNanos = Math.max(1, period.toNanos() / permits);
+        this.burstNanos = intervalNanos * permits;
+        this.tickNanos = Math.max(1_000_000, burstNanos / (WHEEL_SIZE - 1) + 1);
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+        List<ConcurrentLinkedQueue<Bucket>> slots = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++)
+            slots.add(new ConcurrentLinkedQueue<>());
+        this.wheel = List.copyOf(slots);
+    }
+
+    /**
+     * Take a token from the bucket of a player
+     *
+     * @return 0 if a token was taken, otherwise the time to wait for the next token, in nanoseconds
+     */
+    long tryAcquire(@NotNull final UUID player)
+    {
+        long now = clock.getAsLong();
+        expire(now);
+        Bucket bucket = buckets.get(player);
+        if (bucket == null)
+        {
+            Bucket created = new Bucket(player, now);
+            bucket = buckets.putIfAbsent(player, created);
+            if (bucket == null)
+            {
+                bucket = created;
+                schedule(created, now + burstNanos);
+            }
+        }
+        while (true)
+        {
+            long fullAt = bucket.fullAt.get();
+            long next = Math.max(fullAt, now) + intervalNanos;
+            long excess = next - now - burstNanos;
+            if (excess > 0)
+                return excess;
+            if (bucket.fullAt.compareAndSet(fullAt, next))
+                return 0;
+        }
+    }
+
+    /**
+     * Number of players whose bucket is not known to be full
+     */
+    int size()
+    {
+        return buckets.size();
+    }
+
+    private void schedule(Bucket bucket, long time)
+    {
+        long current = currentTick.get();
+        long tick = Math.min(Math.max(Math.floorDiv(time - origin, tickNanos) + 1, current + 1), current + WHEEL_SIZE - 1);
+        wheel.get((int) (tick % WHEEL_SIZE)).add(bucket);
+    }
+
+    /**
+     * Advance the wheel to the current time. Elapsed ticks are claimed by a single thread, which drops the full
+     * buckets of these ticks and schedules the others again.
+     */
+    private void expire(long now)
+    {
+        long target = Math.floorDiv(now - origin, tickNanos);
+        long tick = currentTick.get();
+        while (tick < target && !currentTick.compareAndSet(tick, target))
+            tick = currentTick.get();
+        if (tick >= target)
+            return;
+        List<Bucket> due = new ArrayList<>();
+        // After a long pause, every slot is visited once
+        for (long t = Math.max(tick + 1, target - WHEEL_SIZE + 1); t <= target; t++)
+        {
+            ConcurrentLinkedQueue<Bucket> slot = wheel.get((int) (t % WHEEL_SIZE));
+            Bucket bucket;
+            while ((bucket = slot.poll()) != null)
+                due.add(bucket);
+        }
+        for (Bucket bucket : due)
+        {
+            long fullAt = bucket.fullAt.get();
+            if (fullAt - now <= 0)
+                // A token taken concurrently is lost, which only makes the limit more lenient
+                buckets.remove(bucket.player, bucket);
+            else
+                schedule(bucket, fullAt);
+        }
+    }
+
+    private static final class Bucket {
+        private final UUID player;
+        private final AtomicLong fullAt;
+
+        private Bucket(final UUID player, final long fullAt)
+        {
+            this.player = player;
+            this.fullAt = new AtomicLong(fullAt);
+        }
+    }
+}
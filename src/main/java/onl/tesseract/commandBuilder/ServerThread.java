@@ -0,0 +1,57 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Hop back to the server thread, to call the Bukkit API from an async command
+ */
+public final class ServerThread {
+
+    private ServerThread()
+    {
+    }
+
+    /**
+     * Run a task on the server thread. Runs it immediately if already on the server thread.
+     *
+     * @return Completed once the task has run
+     */
+    @NotNull
+    public static CompletableFuture<Void> run(@NotNull final Plugin plugin, @NotNull final Runnable task)
+    {
+        return call(plugin, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Compute a value on the server thread. Computes it immediately if already on the server thread.
+     *
+     * @return Completed with the computed value, or exceptionally if the task threw
+     */
+    @NotNull
+    public static <T> CompletableFuture<T> call(@NotNull final Plugin plugin, @NotNull final Supplier<T> task)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable runnable = () -> {
+            try
+            {
+                future.complete(task.get());
+            }
+            catch (Throwable e)
+            {
+                future.completeExceptionally(e);
+            }
+        };
+        if (plugin.getServer().isPrimaryThread())
+            runnable.run();
+        else
+            plugin.getServer().getScheduler().runTask(plugin, runnable);
+        return future;
+    }
+}
@@ -0,0 +1,84 @@
+package onl.tesseract.commandBuilder;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Sorted index of the names and aliases of a command's subcommands, used for tab completion. Names starting with a
+ * given prefix form a contiguous range of the index, found by binary search.
+ */
+final class SubCommandIndex {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte ACCEPTED = 1;
+    private static final byte REJECTED = 2;
+
+    private final String[] names;
+    /**
+     * Index in {@link #commands} of the subcommand designated by each name
+     */
+    private final int[] owners;
+    private final CommandDefinition[] commands;
+
+    SubCommandIndex(Map<String, CommandDefinition> subCommands, Map<String, CommandDefinition> aliases)
+    {
+        Map<CommandDefinition, Integer> commandIds = new IdentityHashMap<>();
+        List<Pair<String, CommandDefinition>> entries = new ArrayList<>(subCommands.size() + aliases.size());
+        subCommands.forEach((name, command) -> entries.add(new Pair<>(name, command)));
+        aliases.forEach((name, command) -> entries.add(new Pair<>(name, command)));
+        entries.sort((a, b) -> a.getLeft().compareTo(b.getLeft()));
+
+        names = new String[entries.size()];
+        owners = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++)
+        {
+            names[i] = entries.get(i).getLeft();
+            owners[i] = commandIds.computeIfAbsent(entries.get(i).getRight(), command -> commandIds.size());
+        }
+        commands = new CommandDefinition[commandIds.size()];
+        commandIds.forEach((command, id) -> commands[id] = command);
+    }
+
+    /**
+     * List the names and aliases starting with the given prefix, whose subcommand is accepted by the filter. The
+     * filter is evaluated at most once per subcommand, and only for subcommands having a matching name.
+     */
+    @NotNull
+    List<String> complete(@NotNull String prefix, @NotNull Predicate<CommandDefinition> filter)
+    {
+        int start = lowerBound(prefix);
+        List<String> res = new ArrayList<>();
+        byte[] decisions = null;
+        for (int i = start; i < names.length && names[i].startsWith(prefix); i++)
+        {
+            if (decisions == null)
+                decisions = new byte[commands.length];
+            int owner = owners[i];
+            if (decisions[owner] == UNKNOWN)
+                decisions[owner] = filter.test(commands[owner]) ? ACCEPTED : REJECTED;
+            if (decisions[owner] == ACCEPTED)
+                res.add(names[i]);
+        }
+        return res;
+    }
+
+    /**
+     * Index of the first name greater than or equal to the given key
+     */
+    private int lowerBound(String key)
+    {
+        int index = Arrays.binarySearch(names, key);
+        if (index < 0)
+            return -index - 1;
+        // A name can be both a subcommand name and an alias
+        while (index > 0 && names[index - 1].equals(key))
+            index--;
+        return index;
+    }
+}
@@ -0,0 +1,114 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short-lived cache of argument completions, keyed by sender, argument, previous args of the command line and typed
+ * prefix. Avoids querying a completer again on each keystroke, such as when the player erases a character.
+ * <br/>
+ * Completions are cached for each sender, since completers may depend on it. Trees whose completers never do can share
+ * them between all senders, see {@link #TabCompletionCache(Duration, int, boolean)}.
+ */
+public final class TabCompletionCache {
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final boolean shared;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    public TabCompletionCache(@NotNull final Duration ttl)
+    {
+        this(ttl, 1024);
+    }
+
+    /**
+     * @param ttl Time during which completions are reused
+     * @param maxEntries Maximum number of cached completions. Expired entries are evicted when it is reached, and
+     * the cache is cleared if all entries are alive.
+     */
+    public TabCompletionCache(@NotNull final Duration ttl, final int maxEntries)
+    {
+        this(ttl, maxEntries, false);
+    }
+
+    /**
+     * @param ttl Time during which completions are reused
+     * @param maxEntries Maximum number of cached completions. Expired entries are evicted when it is reached, and
+     * the cache is cleared if all entries are alive.
+     * @param shared Whether completions are shared by all senders. Only for trees whose completers do not depend on
+     * the sender, such as through {@link CommandEnvironment#getSender()}.
+     */
+    public TabCompletionCache(@NotNull final Duration ttl, final int maxEntries, final boolean shared)
+    {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be positive");
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.shared = shared;
+    }
+
+    @Nullable
+    List<String> get(@NotNull final CommandSender sender, @NotNull final CommandArgumentDefinition<?> argument,
+                     @NotNull final List<String> previousArgs, @NotNull final String prefix)
+    {
+        Key key = new Key(senderKey(sender), argument, previousArgs, prefix);
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.expiresAt - System.nanoTime() <= 0)
+        {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.completions;
+    }
+
+    void put(@NotNull final CommandSender sender, @NotNull final CommandArgumentDefinition<?> argument,
+             @NotNull final List<String> previousArgs, @NotNull final String prefix, @NotNull final List<String> completions)
+    {
+        if (entries.size() >= maxEntries)
+            evict();
+        entries.put(new Key(senderKey(sender), argument, List.copyOf(previousArgs), prefix),
+                new Entry(List.copyOf(completions), System.nanoTime() + ttlNanos));
+    }
+
+    @Nullable
+    private Object senderKey(CommandSender sender)
+    {
+        return shared ? null : CommandDefinition.senderKey(sender);
+    }
+
+    private void evict()
+    {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.expiresAt - now <= 0);
+        if (entries.size() >= maxEntries)
+            entries.clear();
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * @param sender Null if the cache is shared
+     */
+    private record Key(@Nullable Object sender, CommandArgumentDefinition<?> argument, List<String> previousArgs,
+                       String prefix) {
+    }
+
+    private record Entry(List<String> completions, long expiresAt) {
+    }
+}
@@ -0,0 +1,106 @@
+package onl.tesseract.commandBuilder;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watches the time spent by commands on the server thread. Predicates and bodies of non-async commands taking longer
+ * than the threshold are reported, with the method declaring the command.
+ * <br/>
+ * Optionally, a command whose body exceeds the threshold repeatedly is promoted: its body then runs asynchronously,
+ * as if the command was declared async. Only promote commands whose body does not need to run on the server thread.
+ */
+public final class TickBudget {
+    private static final Logger logger = LoggerFactory.getLogger(TickBudget.class);
+
+    public enum Phase {
+        PREDICATES,
+        BODY
+    }
+
+    private final long thresholdNanos;
+    private final int promoteAfter;
+    private final Map<String, AtomicInteger> slowBodies = new ConcurrentHashMap<>();
+    private final Set<String> promoted = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Report slow commands, without promoting them
+     */
+    public TickBudget(@NotNull final Duration threshold)
+    {
+        this(threshold, 0);
+    }
+
+    /**
+     * @param threshold Maximum time a command should spend in its predicates or its body
+     * @param promoteAfter Number of slow executions of a command body after which the body runs asynchronously. 0 to
+     * never promote commands.
+     */
+    public TickBudget(@NotNull final Duration threshold, final int promoteAfter)
+    {
+        if (promoteAfter < 0)
+            throw new IllegalArgumentException("promoteAfter must not be negative");
+        this.thresholdNanos = threshold.toNanos();
+        this.promoteAfter = promoteAfter;
+    }
+
+    void check(@NotNull final CommandDefinition command, @NotNull final Phase phase, final long nanos)
+    {
+        if (nanos <= thresholdNanos)
+            return;
+        String path = command.getPath();
+        logger.warn("Command {} spent {} ms in its {} on the server thread, over the budget of {} ms (declared by {})",
+                path, nanos / 1_000_000.0, phase.name().toLowerCase(), thresholdNanos / 1_000_000.0,
+                command.getSource() != null ? command.getSource() : "a CommandBuilder");
+        if (phase != Phase.BODY || promoteAfter == 0)
+            return;
+
+        int count = slowBodies.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+        // Async execution needs a plugin or an executor
+        if (count >= promoteAfter && command.canRunAsync() && promoted.add(path))
+            logger.warn("Command {} exceeded the budget {} times, its body now runs asynchronously", path, count);
+    }
+
+    boolean isPromoted(@NotNull final String path)
+    {
+        return !promoted.isEmpty() && promoted.contains(path);
+    }
+
+    /**
+     * Number of slow body executions, by command path
+     */
+    @NotNull
+    public Map<String, Integer> getSlowBodies()
+    {
+        Map<String, Integer> res = new HashMap<>();
+        slowBodies.forEach((path, count) -> res.put(path, count.get()));
+        return res;
+    }
+
+    /**
+     * Paths of the commands whose body now runs asynchronously
+     */
+    @NotNull
+    public Set<String> getPromoted()
+    {
+        return Collections.unmodifiableSet(promoted);
+    }
+
+    /**
+     * Forget the slow executions of a command, and run it on the server thread again
+     */
+    public void reset(@NotNull final String path)
+    {
+        slowBodies.remove(path);
+        promoted.remove(path);
+    }
+}
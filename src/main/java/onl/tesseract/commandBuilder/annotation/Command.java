@@ -44,4 +44,9 @@ public @interface Command {
     int helpPriority() default 50;
 
     boolean isAsync() default false;
+
+    /**
+     * Limit of the executions of this command by each player. Not limited by default.
+     */
+    RateLimit rateLimit() default @RateLimit;
 }
@@ -14,5 +14,21 @@ public @interface CommandPredicate {
      * tab completion if the predicate returns false
      */
     boolean strict() default false;
+
+    /**
+     * Test the predicate once per execution or tab completion. The other commands checked with the same method, such
+     * as the sibling subcommands listed by a completion, reuse its result. For costly idempotent checks such as
+     * database lookups.
+     * <br/>
+     * The method cannot take {@link Argument} parameters, as its result would be reused for other argument values.
+     */
+    boolean cached() default false;
+
+    /**
+     * Time in milliseconds during which the result of a cached predicate is also reused by the later executions and
+     * completions of the same sender. The method must then only depend on the sender. 0 to only reuse the result in
+     * the same execution.
+     */
+    long cacheMillis() default 0;
 }
 
@@ -10,4 +10,19 @@ import java.lang.annotation.Target;
 public @interface EnvInsert {
 
     String value();
+
+    /**
+     * Compute the inserted value once per execution, when several levels of the command insert the value of this
+     * method, such as the guild of the sender inserted by a guild command and by its subcommands.
+     * <br/>
+     * The method cannot take {@link Argument} parameters, as its value would be reused for other argument values.
+     */
+    boolean cached() default false;
+
+    /**
+     * Time in milliseconds during which the inserted value is also reused by the later executions of the same sender.
+     * The value must then only depend on the sender, and remain valid during that time. 0 to only reuse it in the
+     * same execution.
+     */
+    long cacheMillis() default 0;
 }
@@ -0,0 +1,29 @@
+package onl.tesseract.commandBuilder.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits how often each player can execute a command. A player can execute the command {@link #permits()} times in a
+ * row, then regains one execution every {@code periodMillis / permits}. A cooldown is a limit of 1 permit.
+ * <br/>
+ * Only executions running the body of the command are counted: executing one of its subcommands, its help or
+ * showing its usage does not use a permit. Rejected executions stop before the env inserters and the body run.
+ * Senders which are not players, such as the console, are not limited.
+ */
+@Target(ElementType.ANNOTATION_TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimit {
+
+    /**
+     * Executions allowed per period. 0 for no limit.
+     */
+    int permits() default 0;
+
+    /**
+     * Period in milliseconds
+     */
+    long periodMillis() default 1000;
+}
@@ -0,0 +1,75 @@
+package onl.tesseract.commandBuilder.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives execution measures of commands. Commands are identified by their full path, such as
+ * {@code guild.member.kick}. Implementations are called from the threads executing the commands, possibly
+ * concurrently, and should be cheap.
+ * <br/>
+ * Set on a command tree with {@link onl.tesseract.commandBuilder.CommandBuilder#metrics(CommandMetrics)} or
+ * {@link onl.tesseract.commandBuilder.CommandDefinition#setMetrics(CommandMetrics)}.
+ *
+ * @see InMemoryCommandMetrics
+ */
+public interface CommandMetrics {
+
+    /**
+     * Records nothing
+     */
+    CommandMetrics NONE = new CommandMetrics() {
+    };
+
+    /**
+     * The command has been targeted by a sender, after its arguments have been parsed
+     */
+    default void recordInvocation(@NotNull String path)
+    {
+    }
+
+    /**
+     * Time spent parsing the arguments of the command, in nanoseconds
+     */
+    default void recordParseTime(@NotNull String path, long nanos)
+    {
+    }
+
+    /**
+     * Time spent testing the predicates of the command, in nanoseconds
+     */
+    default void recordPredicateTime(@NotNull String path, long nanos)
+    {
+    }
+
+    /**
+     * Time spent running the body of the command, in nanoseconds
+     */
+    default void recordBodyTime(@NotNull String path, long nanos)
+    {
+    }
+
+    default void recordPermissionDenied(@NotNull String path)
+    {
+    }
+
+    /**
+     * The sender has executed the command too often, and the execution was rejected before running its body
+     */
+    default void recordRateLimited(@NotNull String path)
+    {
+    }
+
+    /**
+     * An argument of the command could not be parsed
+     */
+    default void recordParseError(@NotNull String path)
+    {
+    }
+
+    /**
+     * The body of the command threw an exception
+     */
+    default void recordFailure(@NotNull String path)
+    {
+    }
+}
@@ -0,0 +1,123 @@
+package onl.tesseract.commandBuilder.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures of a single command path, recorded by {@link InMemoryCommandMetrics}
+ */
+public final class CommandStats {
+
+    @Getter
+    private final String path;
+    @Getter
+    private final LatencyHistogram parseTime = new LatencyHistogram();
+    @Getter
+    private final LatencyHistogram predicateTime = new LatencyHistogram();
+    @Getter
+    private final LatencyHistogram bodyTime = new LatencyHistogram();
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder permissionDenials = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder parseErrors = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    CommandStats(final String path)
+    {
+        this.path = path;
+    }
+
+    public long getInvocations()
+    {
+        return invocations.sum();
+    }
+
+    public long getPermissionDenials()
+    {
+        return permissionDenials.sum();
+    }
+
+    /**
+     * Executions rejected by the rate limit of the command
+     */
+    public long getRateLimited()
+    {
+        return rateLimited.sum();
+    }
+
+    public long getParseErrors()
+    {
+        return parseErrors.sum();
+    }
+
+    public long getFailures()
+    {
+        return failures.sum();
+    }
+
+    /**
+     * Ratio of invocations whose body threw an exception
+     */
+    public double getFailureRate()
+    {
+        long total = getInvocations();
+        return total == 0 ? 0 : (double) getFailures() / total;
+    }
+
+    void recordInvocation()
+    {
+        invocations.increment();
+    }
+
+    void recordPermissionDenied()
+    {
+        permissionDenials.increment();
+    }
+
+    void recordRateLimited()
+    {
+        rateLimited.increment();
+    }
+
+    void recordParseError()
+    {
+        parseErrors.increment();
+    }
+
+    void recordFailure()
+    {
+        failures.increment();
+    }
+
+    void reset()
+    {
+        parseTime.reset();
+        predicateTime.reset();
+        bodyTime.reset();
+        invocations.reset();
+        permissionDenials.reset();
+        rateLimited.reset();
+        parseErrors.reset();
+        failures.reset();
+    }
+
+    /**
+     * One-line summary, with times in microseconds
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("%s: %d invocations, %d denied, %d rate limited, %d parse errors, %d failures, "
+                        + "parse p50/p99 %.1f/%.1fµs, predicates p50/p99 %.1f/%.1fµs, body p50/p99/max %.1f/%.1f/%.1fµs",
+                path, getInvocations(), getPermissionDenials(), getRateLimited(), getParseErrors(), getFailures(),
+                micros(parseTime.getValueAtPercentile(50)), micros(parseTime.getValueAtPercentile(99)),
+                micros(predicateTime.getValueAtPercentile(50)), micros(predicateTime.getValueAtPercentile(99)),
+                micros(bodyTime.getValueAtPercentile(50)), micros(bodyTime.getValueAtPercentile(99)), micros(bodyTime.getMax()));
+    }
+
+    private static double micros(long nanos)
+    {
+        return nanos / 1000.0;
+    }
+}
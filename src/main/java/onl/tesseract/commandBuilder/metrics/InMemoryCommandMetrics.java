@@ -0,0 +1,108 @@
+package onl.tesseract.commandBuilder.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the measures of each command path in memory, to be queried or dumped, for example from an admin command
+ */
+public final class InMemoryCommandMetrics implements CommandMetrics {
+
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+
+    private CommandStats statsOf(String path)
+    {
+        CommandStats commandStats = stats.get(path);
+        if (commandStats == null)
+            commandStats = stats.computeIfAbsent(path, CommandStats::new);
+        return commandStats;
+    }
+
+    @Override
+    public void recordInvocation(@NotNull final String path)
+    {
+        statsOf(path).recordInvocation();
+    }
+
+    @Override
+    public void recordParseTime(@NotNull final String path, final long nanos)
+    {
+        statsOf(path).getParseTime().record(nanos);
+    }
+
+    @Override
+    public void recordPredicateTime(@NotNull final String path, final long nanos)
+    {
+        statsOf(path).getPredicateTime().record(nanos);
+    }
+
+    @Override
+    public void recordBodyTime(@NotNull final String path, final long nanos)
+    {
+        statsOf(path).getBodyTime().record(nanos);
+    }
+
+    @Override
+    public void recordPermissionDenied(@NotNull final String path)
+    {
+        statsOf(path).recordPermissionDenied();
+    }
+
+    @Override
+    public void recordRateLimited(@NotNull final String path)
+    {
+        statsOf(path).recordRateLimited();
+    }
+
+    @Override
+    public void recordParseError(@NotNull final String path)
+    {
+        statsOf(path).recordParseError();
+    }
+
+    @Override
+    public void recordFailure(@NotNull final String path)
+    {
+        statsOf(path).recordFailure();
+    }
+
+    @Nullable
+    public CommandStats getStats(@NotNull final String path)
+    {
+        return stats.get(path);
+    }
+
+    /**
+     * Measures of all recorded command paths
+     */
+    @NotNull
+    public Map<String, CommandStats> getAllStats()
+    {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * One line per command path, the commands spending the most time in their body first
+     */
+    @NotNull
+    public List<String> dump()
+    {
+        return stats.values().stream()
+                    .sorted(Comparator.comparingDouble((CommandStats s) -> s.getBodyTime().getMean() * s.getBodyTime().getCount())
+                                      .reversed())
+                    .map(CommandStats::toString)
+                    .collect(Collectors.toList());
+    }
+
+    public void reset()
+    {
+        stats.values().forEach(CommandStats::reset);
+    }
+}
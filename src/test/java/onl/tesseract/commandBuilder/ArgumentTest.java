@@ -5,11 +5,15 @@ import onl.tesseract.commandBuilder.annotation.Command;
 import onl.tesseract.commandBuilder.annotation.CommandBody;
 import onl.tesseract.commandBuilder.annotation.Env;
 import onl.tesseract.commandBuilder.exception.ArgumentParsingException;
+import onl.tesseract.commandBuilder.exception.CommandBuildException;
 import onl.tesseract.commandBuilder.exception.InvalidArgumentTypeException;
 import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.junit.Before;
-import org.junit.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -18,7 +22,7 @@ import static org.mockito.Mockito.times;
 public class ArgumentTest {
     private CommandSender sender;
 
-    @Before
+    @BeforeEach
     public void setup()
     {
         sender = mock(CommandSender.class);
@@ -53,6 +57,20 @@ public class ArgumentTest {
         assertNull(arg);
     }
 
+    @Test
+    public void parseInteger_storesRawValue_wrapsOnDemand() throws ArgumentParsingException, ReflectiveOperationException
+    {
+        CommandArgumentDefinition<Integer> definition = CommandArgumentBuilder.getBuilder(IntegerArgument.class, "number").build();
+        CommandEnvironment env = new CommandEnvironment(sender);
+
+        assertTrue(definition.parse("42", env));
+
+        assertEquals(42, env.get("number", Integer.class));
+        IntegerArgument wrapper = env.get("number", IntegerArgument.class);
+        assertEquals(42, wrapper.get());
+        assertSame(wrapper, env.get("number"));
+    }
+
     @Test
     public void CallArgsOnSubCommand_NoClassOnAnnotationTest()
     {
@@ -182,6 +200,146 @@ public class ArgumentTest {
         assertTrue(res);
         verify(sender).sendMessage("42");
     }
+
+    @Test
+    public void primitiveArguments_StoredWithoutBoxing()
+    {
+        CommandDefinition command = new CommandBuilder("tp")
+                .withArg(new CoordinateArgument("x"))
+                .withArg(new CoordinateArgument("y"))
+                .withArg(new AmountArgument("amount"))
+                .withArg(new ScaleArgument("scale"))
+                .withArg(new FlagArgument("silent"))
+                .command(env -> env.getSender().sendMessage(env.getDouble("x") + env.getDouble("y") + " "
+                        + env.getLong("amount") + " " + env.getFloat("scale") + " " + env.getBoolean("silent")))
+                .build(null);
+
+        command.execute(sender, new String[] {"1.5", "2", "10000000000", "0.5", "true"});
+
+        verify(sender).sendMessage("3.5 10000000000 0.5 true");
+    }
+
+    @Test
+    public void primitiveArguments_BoxedAndWrapped()
+    {
+        CommandEnvironment[] environment = new CommandEnvironment[1];
+        CommandDefinition command = new CommandBuilder("give")
+                .withArg(new IntegerArgument("count"))
+                .command(env -> environment[0] = env)
+                .build(null);
+
+        command.execute(sender, new String[] {"64"});
+
+        CommandEnvironment env = environment[0];
+        assertEquals(64, env.getInt("count"));
+        assertEquals(64L, env.getLong("count"));
+        assertEquals(64, env.get("count", Integer.class));
+        assertEquals(64, env.get("count", int.class));
+        assertEquals(64, env.get("count", IntegerArgument.class).get());
+        assertEquals(64, ((IntegerArgument) env.get("count")).get());
+        // Once wrapped
+        assertEquals(64, env.getInt("count"));
+        assertThrows(IllegalStateException.class, () -> env.getInt("missing"));
+    }
+
+    @Test
+    public void primitiveArguments_InjectedIntoPrimitiveParameters()
+    {
+        new PrimitiveParameters().command.execute(sender, new String[] {"3", "1.5", "4"});
+
+        verify(sender).sendMessage("3 1.5 4");
+    }
+
+    @Test
+    public void primitiveParser_MismatchedTypeRejectedAtBuild()
+    {
+        CommandBuilder builder = new CommandBuilder("cmd");
+
+        assertThrows(CommandBuildException.class, () -> builder.withArg(new CountArgument("count")));
+        assertEquals(Double.class, CommandArgumentBuilder.resolveValueType(CoordinateArgument.class));
+    }
+}
+
+class CountArgument extends CommandArgument<String> {
+    public CountArgument(final String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void define(final CommandArgumentBuilderSteps.@NotNull Parser<String> builder)
+    {
+        builder.intParser((input, env) -> Integer.parseInt(input))
+               .tabCompleter((input, env) -> List.of());
+    }
+}
+
+class CoordinateArgument extends CommandArgument<Double> {
+    public CoordinateArgument(final String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void define(final CommandArgumentBuilderSteps.@NotNull Parser<Double> builder)
+    {
+        builder.doubleParser((input, env) -> Double.parseDouble(input))
+               .tabCompleter((input, env) -> List.of("~"));
+    }
+}
+
+class AmountArgument extends CommandArgument<Long> {
+    public AmountArgument(final String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void define(final CommandArgumentBuilderSteps.@NotNull Parser<Long> builder)
+    {
+        builder.longParser((input, env) -> Long.parseLong(input))
+               .tabCompleter((input, env) -> List.of());
+    }
+}
+
+class ScaleArgument extends CommandArgument<Float> {
+    public ScaleArgument(final String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void define(final CommandArgumentBuilderSteps.@NotNull Parser<Float> builder)
+    {
+        builder.floatParser((input, env) -> Float.parseFloat(input))
+               .tabCompleter((input, env) -> List.of());
+    }
+}
+
+class FlagArgument extends CommandArgument<Boolean> {
+    public FlagArgument(final String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void define(final CommandArgumentBuilderSteps.@NotNull Parser<Boolean> builder)
+    {
+        builder.booleanParser((input, env) -> Boolean.parseBoolean(input))
+               .tabCompleter((input, env) -> List.of("true", "false"));
+    }
+}
+
+@Command
+class PrimitiveParameters extends CommandContext {
+    @CommandBody
+    public void teleport(@Argument(value = "x", clazz = IntegerArgument.class) int x,
+                         @Argument(value = "y", clazz = CoordinateArgument.class) double y,
+                         @Argument(value = "z", clazz = IntegerArgument.class) long z,
+                         CommandSender sender)
+    {
+        sender.sendMessage(x + " " + y + " " + z);
+    }
 }
 
 @Command(args = @Argument(value = "arg", clazz = IntegerArgument.class))
@@ -0,0 +1,73 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AsyncExecutorTest {
+
+    @Test
+    void virtualThreads_RunsAsyncBodyWithoutPlugin() throws Exception
+    {
+        CompletableFuture<Boolean> ranOnVirtualThread = new CompletableFuture<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .asyncExecutor(AsyncCommandExecutor.virtualThreads())
+                .subCommand(new CommandBuilder("io")
+                        .setAsync(true)
+                        .command(env -> ranOnVirtualThread.complete(Thread.currentThread().isVirtual())))
+                .build(null);
+
+        assertTrue(command.execute(mock(CommandSender.class), new String[]{"io"}));
+
+        assertTrue(ranOnVirtualThread.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void executor_SyncCommandsNotAffected()
+    {
+        AsyncCommandExecutor executor = mock(AsyncCommandExecutor.class);
+        Thread[] bodyThread = new Thread[1];
+        CommandDefinition command = new CommandBuilder("root")
+                .command(env -> bodyThread[0] = Thread.currentThread())
+                .build(null);
+        command.setAsyncExecutor(executor);
+
+        command.execute(mock(CommandSender.class), new String[0]);
+
+        assertSame(Thread.currentThread(), bodyThread[0]);
+        verifyNoInteractions(executor);
+    }
+
+    @Test
+    void serverThread_RunsImmediatelyOnServerThread() throws Exception
+    {
+        Plugin plugin = mock(Plugin.class, RETURNS_DEEP_STUBS);
+        when(plugin.getServer().isPrimaryThread()).thenReturn(true);
+
+        assertEquals(3, ServerThread.call(plugin, () -> 3).get());
+    }
+
+    @Test
+    void serverThread_ScheduledFromOtherThread() throws Exception
+    {
+        Plugin plugin = mock(Plugin.class, RETURNS_DEEP_STUBS);
+        when(plugin.getServer().isPrimaryThread()).thenReturn(false);
+        BukkitScheduler scheduler = plugin.getServer().getScheduler();
+
+        CompletableFuture<Integer> result = ServerThread.call(plugin, () -> 3);
+        assertFalse(result.isDone());
+
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).runTask(eq(plugin), task.capture());
+        task.getValue().run();
+        assertEquals(3, result.get());
+    }
+}
@@ -0,0 +1,284 @@
+package onl.tesseract.commandBuilder;
+
+import onl.tesseract.commandBuilder.metrics.InMemoryCommandMetrics;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AsyncPipelineTest {
+
+    /**
+     * Futures returned by the parser of {@link LookupArgument}, completed by the tests
+     */
+    private static final List<CompletableFuture<String>> lookups = new ArrayList<>();
+
+    public static class LookupArgument extends CommandArgument<String> {
+        public LookupArgument(final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public void define(final CommandArgumentBuilderSteps.@NotNull Parser<String> builder)
+        {
+            builder.asyncParser((input, env) -> {
+                       CompletableFuture<String> lookup = new CompletableFuture<>();
+                       lookups.add(lookup);
+                       return lookup;
+                   })
+                   .tabCompleter((input, env) -> List.of())
+                   .errorHandler(IllegalArgumentException.class, "Unknown player");
+        }
+    }
+
+    /**
+     * Threads on which {@link ThreadRecordingArgument} was parsed
+     */
+    private static final List<Thread> parseThreads = new ArrayList<>();
+
+    public static class ThreadRecordingArgument extends CommandArgument<String> {
+        public ThreadRecordingArgument(final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public void define(final CommandArgumentBuilderSteps.@NotNull Parser<String> builder)
+        {
+            builder.parser((input, env) -> {
+                       parseThreads.add(Thread.currentThread());
+                       return input;
+                   })
+                   .tabCompleter((input, env) -> List.of());
+        }
+    }
+
+    public static class KnownPlayerArgument extends CommandArgument<String> {
+        public KnownPlayerArgument(final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public void define(final CommandArgumentBuilderSteps.@NotNull Parser<String> builder)
+        {
+            builder.asyncParser((input, env) -> input.equals("Notch")
+                                                ? CompletableFuture.completedFuture("uuid-of-notch")
+                                                : CompletableFuture.failedFuture(new IllegalArgumentException()))
+                   .tabCompleter((input, env) -> List.of())
+                   .errorHandler(IllegalArgumentException.class, "Unknown player");
+        }
+    }
+
+    @BeforeEach
+    void clearLookups()
+    {
+        lookups.clear();
+        parseThreads.clear();
+    }
+
+    @Test
+    void asyncParser_BodyRunsOnceParsed()
+    {
+        List<String> received = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .subCommand(new CommandBuilder("info")
+                        .withArg(new LookupArgument("player"))
+                        .withArg(new IntegerArgument("page"))
+                        .command(env -> received.add(env.get("player", String.class) + ":" + env.get("page", Integer.class))))
+                .build(null);
+
+        CompletableFuture<Boolean> result = command.executeAsync(mock(CommandSender.class), new String[]{"info", "Notch", "2"});
+
+        assertFalse(result.isDone());
+        assertEquals(1, lookups.size());
+        lookups.get(0).complete("uuid-of-notch");
+
+        assertTrue(result.join());
+        assertEquals(List.of("uuid-of-notch:2"), received);
+    }
+
+    @Test
+    void asyncParser_HandledError()
+    {
+        CommandSender sender = mock(CommandSender.class);
+        InMemoryCommandMetrics metrics = new InMemoryCommandMetrics();
+        boolean[] ran = new boolean[1];
+        CommandDefinition command = new CommandBuilder("root")
+                .metrics(metrics)
+                .withArg(new LookupArgument("player"))
+                .command(env -> ran[0] = true)
+                .build(null);
+
+        assertTrue(command.execute(sender, new String[]{"Unknown"}));
+        lookups.get(0).completeExceptionally(new IllegalArgumentException());
+
+        assertFalse(ran[0]);
+        verify(sender).sendMessage(contains("Unknown player"));
+        assertEquals(1, metrics.getStats("root").getParseErrors());
+    }
+
+    @Test
+    void futureBody_CompletesWithBody()
+    {
+        CompletableFuture<Void> save = new CompletableFuture<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .commandFuture(env -> save)
+                .build(null);
+
+        CompletableFuture<Boolean> result = command.executeAsync(mock(CommandSender.class), new String[0]);
+
+        assertFalse(result.isDone());
+        save.complete(null);
+        assertTrue(result.join());
+    }
+
+    @Test
+    void futureBody_InsertersResolvedOnServerThread() throws InterruptedException
+    {
+        Thread serverThread = Thread.currentThread();
+        Thread[] inserterThread = new Thread[1];
+        CommandDefinition command = new CommandBuilder("root")
+                .envInserter("guild", env -> {
+                    inserterThread[0] = Thread.currentThread();
+                    return "Knights";
+                })
+                .commandFuture(env -> CompletableFuture.runAsync(() -> env.get("guild", String.class)))
+                .build(null);
+
+        command.executeAsync(mock(CommandSender.class), new String[0]).join();
+
+        assertSame(serverThread, inserterThread[0]);
+    }
+
+    @Test
+    void futureBody_FailureReported()
+    {
+        CommandSender sender = mock(CommandSender.class);
+        InMemoryCommandMetrics metrics = new InMemoryCommandMetrics();
+        CompletableFuture<Void> save = new CompletableFuture<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .metrics(metrics)
+                .commandFuture(env -> save)
+                .build(null);
+
+        assertTrue(command.execute(sender, new String[0]));
+        save.completeExceptionally(new IllegalStateException("Database unavailable"));
+
+        verify(sender).sendMessage(contains("Une erreur est survenue"));
+        assertEquals(1, metrics.getStats("root").getFailures());
+        assertEquals(1, metrics.getStats("root").getBodyTime().getCount());
+    }
+
+    @Test
+    void asyncParser_ResumesOnServerThread() throws InterruptedException
+    {
+        Thread serverThread = Thread.currentThread();
+        Plugin plugin = mock(Plugin.class, RETURNS_DEEP_STUBS);
+        when(plugin.getServer().isPrimaryThread()).thenAnswer(invocation -> Thread.currentThread() == serverThread);
+        List<Runnable> serverTasks = new ArrayList<>();
+        when(plugin.getServer().getScheduler().runTask(eq(plugin), any(Runnable.class))).thenAnswer(invocation -> {
+            synchronized (serverTasks)
+            {
+                serverTasks.add(invocation.getArgument(1));
+            }
+            return null;
+        });
+        List<Thread> predicateThreads = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .subCommand(new CommandBuilder("info")
+                        .withArg(new LookupArgument("player"))
+                        .withArg(new ThreadRecordingArgument("reason"))
+                        .subCommand(new CommandBuilder("show")
+                                .predicate(new PredicateDefinition(env -> predicateThreads.add(Thread.currentThread()), false))
+                                .command(env -> {
+                                })))
+                .build(null);
+        command.setPlugin(plugin);
+
+        CompletableFuture<Boolean> result = command.executeAsync(mock(CommandSender.class), new String[]{"info", "Notch", "spam", "show"});
+        Thread lookupThread = new Thread(() -> lookups.get(0).complete("uuid-of-notch"));
+        lookupThread.start();
+        lookupThread.join();
+
+        assertTrue(parseThreads.isEmpty());
+        assertEquals(1, serverTasks.size());
+        serverTasks.remove(0).run();
+
+        assertTrue(result.join());
+        assertEquals(List.of(serverThread), parseThreads);
+        assertEquals(List.of(serverThread), predicateThreads);
+    }
+
+    @Test
+    void syncParse_CompletedFutureErrorHandled() throws ReflectiveOperationException
+    {
+        CommandArgumentDefinition<String> definition = CommandArgumentBuilder.getBuilder(KnownPlayerArgument.class, "player").build();
+        CommandSender sender = mock(CommandSender.class);
+        CommandEnvironment env = new CommandEnvironment(sender);
+
+        assertTrue(definition.parse("Notch", env));
+        assertEquals("uuid-of-notch", env.get("player", String.class));
+        assertFalse(definition.parse("Herobrine", env));
+        verify(sender).sendMessage(contains("Unknown player"));
+    }
+
+    @Test
+    void tabComplete_PendingAsyncParserNotAwaited()
+    {
+        CommandDefinition command = new CommandBuilder("root")
+                .withArg(new LookupArgument("player"))
+                .withArg(new StringCommandArgument("reason"))
+                .build(null);
+
+        List<String> completions = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> command.tabComplete(mock(CommandSender.class), new String[]{"Notch", ""}));
+
+        assertNull(completions);
+        assertEquals(1, lookups.size());
+    }
+
+    @Test
+    void asyncParser_DefaultInputParsedWithoutBlocking()
+    {
+        CommandSender sender = mock(CommandSender.class);
+        List<String> received = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .withOptionalArg(new LookupArgument("player"), "me")
+                .command(env -> received.add(env.get("player", String.class)))
+                .build(null);
+
+        CompletableFuture<Boolean> result = command.executeAsync(sender, new String[0]);
+
+        assertFalse(result.isDone());
+        lookups.get(0).completeExceptionally(new IllegalArgumentException());
+        assertFalse(result.join());
+        verify(sender).sendMessage(contains("Unknown player"));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void syncArguments_ExecutedImmediately()
+    {
+        boolean[] ran = new boolean[1];
+        CommandDefinition command = new CommandBuilder("root")
+                .withArg(new IntegerArgument("page"))
+                .command(env -> ran[0] = true)
+                .build(null);
+
+        CompletableFuture<Boolean> result = command.executeAsync(mock(CommandSender.class), new String[]{"3"});
+
+        assertTrue(result.isDone());
+        assertTrue(ran[0]);
+    }
+}
@@ -0,0 +1,133 @@
+package onl.tesseract.commandBuilder;
+
+import onl.tesseract.commandBuilder.annotation.Argument;
+import onl.tesseract.commandBuilder.annotation.Command;
+import onl.tesseract.commandBuilder.annotation.CommandPredicate;
+import onl.tesseract.commandBuilder.exception.CommandBuildException;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CachedResultTest {
+
+    private static CommandDefinition guildCommand(int[] checks, Duration ttl)
+    {
+        CommandBuilder guild = new CommandBuilder("guild");
+        for (String name : List.of("info", "invite", "leave"))
+        {
+            guild.subCommand(new CommandBuilder(name)
+                    .predicate(PredicateDefinition.cached("isMember", env -> ++checks[0] > 0, true, ttl)));
+        }
+        return guild.build(null);
+    }
+
+    @Test
+    void strictPredicate_OncePerCompletion()
+    {
+        int[] checks = new int[1];
+        CommandDefinition command = guildCommand(checks, Duration.ZERO);
+        CommandSender sender = mock(CommandSender.class);
+
+        List<String> res = command.tabComplete(sender, new String[]{""});
+        assertEquals(Set.of("info", "invite", "leave", "help"), new HashSet<>(res));
+        assertEquals(1, checks[0]);
+
+        command.tabComplete(sender, new String[]{"i"});
+        assertEquals(2, checks[0]);
+    }
+
+    @Test
+    void strictPredicate_ReusedForSenderDuringTtl()
+    {
+        int[] checks = new int[1];
+        CommandDefinition command = guildCommand(checks, Duration.ofMinutes(1));
+        UUID uuid = UUID.randomUUID();
+
+        command.tabComplete(player(uuid), new String[]{""});
+        command.tabComplete(player(uuid), new String[]{"i"});
+        command.tabComplete(player(uuid), new String[]{"in"});
+        assertEquals(1, checks[0]);
+
+        command.tabComplete(player(UUID.randomUUID()), new String[]{""});
+        assertEquals(2, checks[0]);
+    }
+
+    @Test
+    void ttl_OtherSendersNotReused()
+    {
+        int[] checks = new int[1];
+        CommandDefinition command = guildCommand(checks, Duration.ofMinutes(1));
+        CommandSender console = mock(CommandSender.class);
+
+        command.tabComplete(console, new String[]{""});
+        command.tabComplete(console, new String[]{"i"});
+
+        assertEquals(2, checks[0]);
+    }
+
+    @Test
+    void ttl_ExpiredResultsDropped()
+    {
+        CachedResult<Boolean> result = new CachedResult<>("isMember", env -> true, Duration.ofNanos(1));
+
+        for (int i = 0; i < 200; i++)
+            result.apply(new CommandEnvironment(player(UUID.randomUUID())));
+
+        assertTrue(result.size() < 200);
+    }
+
+    private static Player player(UUID uuid)
+    {
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(uuid);
+        return player;
+    }
+
+    @Test
+    void envInserter_OncePerExecution()
+    {
+        int[] lookups = new int[1];
+        CachedResult<Object> guildOf = new CachedResult<>("guildOf", env -> "guild-" + ++lookups[0], Duration.ZERO);
+        String[] received = new String[1];
+        CommandDefinition command = new CommandBuilder("guild")
+                .envInserter("guild", guildOf)
+                .predicate(new PredicateDefinition(env -> guildOf.apply(env) != null, false))
+                .subCommand(new CommandBuilder("info")
+                        .envInserter("guild", guildOf)
+                        .command(env -> received[0] = env.get("guild", String.class)))
+                .build(null);
+
+        command.execute(mock(CommandSender.class), new String[]{"info"});
+        assertEquals(1, lookups[0]);
+        assertEquals("guild-1", received[0]);
+
+        command.execute(mock(CommandSender.class), new String[]{"info"});
+        assertEquals("guild-2", received[0]);
+    }
+
+    @Test
+    void cachedMethodWithArgument_Rejected()
+    {
+        assertThrows(CommandBuildException.class, CachedArgumentCommand::new);
+    }
+}
+
+@Command(name = "cached")
+@CommandPredicate(value = "allowed", cached = true)
+class CachedArgumentCommand extends CommandContext {
+
+    boolean allowed(@Argument(value = "page", clazz = IntegerArgument.class) int page)
+    {
+        return page > 0;
+    }
+}
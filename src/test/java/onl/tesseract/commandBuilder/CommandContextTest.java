@@ -2,11 +2,18 @@ package onl.tesseract.commandBuilder;
 
 import onl.tesseract.commandBuilder.annotation.*;
 import org.bukkit.command.CommandSender;
-import org.junit.Test;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
 public class CommandContextTest {
 
@@ -92,6 +99,31 @@ public class CommandContextTest {
         assertNotNull(commandWithBody.command.getConsumer());
     }
 
+    @Test
+    public void source_NamesDeclaringMethod()
+    {
+        assertEquals(CommandWithBody.class.getName() + "#command", new CommandWithBody().command.getSource());
+        CommandContext command = new CommandClassWithSubCommand();
+        assertEquals(CommandClassWithSubCommand.class.getName() + "#myCommand",
+                command.command.getSubCommands().get("my").getSource());
+    }
+
+    @Test
+    public void rateLimitAnnotation_RejectsSecondExecution()
+    {
+        RateLimitedCommand command = new RateLimitedCommand();
+        RateLimitedCommand.count = 0;
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+        when(player.hasPermission(anyString())).thenReturn(true);
+
+        command.command.execute(player, new String[0]);
+        command.command.execute(player, new String[0]);
+
+        assertEquals(1, RateLimitedCommand.count);
+        verify(player).sendMessage(contains("Please wait"));
+    }
+
     @Test
     public void SubCommandOnExternalClassTest()
     {
@@ -99,6 +131,31 @@ public class CommandContextTest {
         assertNotNull(commandA.command.getSubCommands().get("commandB"));
     }
 
+    @Test
+    public void parallelBuild_SameTreeAsSequential()
+    {
+        CommandContext sequential = new PrioritizedSubCommands(false);
+        CommandContext parallel = new PrioritizedSubCommands(true);
+
+        assertEquals(List.of("help", "first", "second", "third", "fourth"), new ArrayList<>(sequential.command.getSubCommands().keySet()));
+        assertEquals(new ArrayList<>(sequential.command.getSubCommands().keySet()), new ArrayList<>(parallel.command.getSubCommands().keySet()));
+        assertEquals(1, parallel.command.getSubCommands().get("third").getArguments().size());
+        assertNotNull(parallel.command.getSubCommands().get("fourth").getSubCommands().get("inner"));
+    }
+
+    @Test
+    public void parallelBuild_ClassInstanceCreatedOnce() throws Exception
+    {
+        CommandBuilderProvider provider = new CommandBuilderProvider(clazz -> null, true);
+        List<CompletableFuture<Object>> instances = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            instances.add(CompletableFuture.supplyAsync(() -> provider.getClassInstance(SlowCommandClass.class)));
+
+        for (CompletableFuture<Object> instance : instances)
+            assertSame(instances.get(0).get(), instance.get());
+        assertEquals(1, SlowCommandClass.created.get());
+    }
+
     @Test
     public void InnerMethodBodyTest()
     {
@@ -112,6 +169,16 @@ public class CommandContextTest {
 
 }
 
+class SlowCommandClass {
+    static final AtomicInteger created = new AtomicInteger();
+
+    public SlowCommandClass() throws InterruptedException
+    {
+        created.incrementAndGet();
+        Thread.sleep(50);
+    }
+}
+
 @Command
 class NoContentNoAnnotationValuesCommand extends CommandContext {
 
@@ -170,6 +237,17 @@ class CommandWithBody extends CommandContext {
     }
 }
 
+@Command(name = "limited", rateLimit = @RateLimit(permits = 1, periodMillis = 60_000))
+class RateLimitedCommand extends CommandContext {
+    public static int count = 0;
+
+    @CommandBody
+    public void command()
+    {
+        count++;
+    }
+}
+
 @Command(subCommands = CommandB.class)
 class CommandA extends CommandContext {
 
@@ -244,4 +322,31 @@ class CommandInsertEnv extends CommandContext {
         if (env.get("foo") != null)
             env.set("bar", env.get("foo", Integer.class) + 1);
     }
-}
\ No newline at end of file
+}
+@Command
+class PrioritizedSubCommands extends CommandContext {
+
+    PrioritizedSubCommands(boolean parallel)
+    {
+        super(CommandInstanceProvider.DEFAULT, parallel);
+    }
+
+    @Command(helpPriority = 30)
+    void second()
+    {}
+
+    @Command(helpPriority = 10)
+    void first()
+    {}
+
+    @Command(helpPriority = 40)
+    void third(@Argument("arg") StringCommandArgument arg)
+    {}
+
+    @Command(helpPriority = 60)
+    static class Fourth {
+        @Command
+        void inner()
+        {}
+    }
+}
@@ -0,0 +1,126 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CommandEnvironmentTest {
+
+    @Test
+    void layout_SameSlotForSameName()
+    {
+        EnvironmentLayout layout = new EnvironmentLayout();
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, layout.add("name" + i));
+
+        assertEquals(42, layout.add("name42"));
+        assertEquals(42, layout.slotOf(new String("name42")));
+        assertEquals(-1, layout.slotOf("unknown"));
+        assertEquals(100, layout.size());
+    }
+
+    @Test
+    void slots_ArgumentsAndUnknownNames() throws Exception
+    {
+        EnvironmentLayout layout = new EnvironmentLayout();
+        CommandArgumentDefinition<Integer> page = CommandArgumentBuilder.getBuilder(IntegerArgument.class, "page").build();
+        page.assignSlot(layout);
+        CommandEnvironment env = new CommandEnvironment(mock(CommandSender.class), layout);
+
+        page.parse("3", env);
+        env.set("extra", "value");
+
+        assertEquals(3, env.get("page", Integer.class));
+        assertEquals(3, env.get("page", IntegerArgument.class).get());
+        assertEquals("value", env.get("extra"));
+        assertNull(env.get("missing"));
+    }
+
+    @Test
+    void slots_ValuesHideArguments() throws Exception
+    {
+        EnvironmentLayout layout = new EnvironmentLayout();
+        CommandArgumentDefinition<Integer> page = CommandArgumentBuilder.getBuilder(IntegerArgument.class, "page").build();
+        page.assignSlot(layout);
+        CommandEnvironment env = new CommandEnvironment(mock(CommandSender.class), layout);
+        CommandEnvironment withoutLayout = new CommandEnvironment(mock(CommandSender.class));
+
+        for (CommandEnvironment environment : new CommandEnvironment[] {env, withoutLayout})
+        {
+            environment.set("page", null);
+            page.parse("3", environment);
+            assertNull(environment.get("page", Integer.class));
+        }
+    }
+
+    @Test
+    void execute_EnvInsertersAndArgumentsShareTreeLayout()
+    {
+        CommandSender sender = mock(CommandSender.class);
+        CommandDefinition command = new CommandBuilder("guild")
+                .withArg(new StringCommandArgument("guild"))
+                .envInserter("size", env -> env.get("guild", String.class).length())
+                .subCommand(new CommandBuilder("kick")
+                        .withArg(new StringCommandArgument("player"))
+                        .command(env -> env.getSender().sendMessage(env.get("player", String.class) + " from "
+                                + env.get("guild", String.class) + " " + env.get("size", Integer.class))))
+                .build(null);
+
+        command.execute(sender, new String[] {"Knights", "kick", "Notch"});
+
+        verify(sender).sendMessage("Notch from Knights 7");
+        assertSame(command.getLayout(), command.getSubCommands().get("kick").getLayout());
+    }
+
+    @Test
+    void envInserters_ComputedWhenRead()
+    {
+        int[] loads = new int[2];
+        int[] received = new int[1];
+        CommandDefinition command = new CommandBuilder("guild")
+                .envInserter("profile", env -> ++loads[0])
+                .subCommand(new CommandBuilder("info")
+                        .envInserter("guild", env -> ++loads[1])
+                        .command(env -> received[0] = env.get("guild", Integer.class) + env.get("guild", Integer.class)))
+                .build(null);
+
+        command.execute(mock(CommandSender.class), new String[]{"info"});
+
+        assertEquals(0, loads[0]);
+        assertEquals(1, loads[1]);
+        assertEquals(2, received[0]);
+    }
+
+    @Test
+    void envInserter_SeesArgumentOfSameName()
+    {
+        String[] received = new String[1];
+        CommandDefinition command = new CommandBuilder("root")
+                .withArg(new StringCommandArgument("target"))
+                .envInserter("target", env -> env.get("target", String.class).toUpperCase())
+                .command(env -> received[0] = env.get("target", String.class))
+                .build(null);
+
+        command.execute(mock(CommandSender.class), new String[]{"notch"});
+
+        assertEquals("NOTCH", received[0]);
+    }
+
+    @Test
+    void lazyValueByName_ResolvedBeforeAsyncBody()
+    {
+        CommandEnvironment env = new CommandEnvironment(mock(CommandSender.class));
+        int[] loads = new int[1];
+        env.set("rank", "member");
+        env.setLazy("rank", e -> e.get("rank", String.class) + "#" + ++loads[0]);
+        env.setLazy("unused", e -> ++loads[0]);
+
+        env.resolveLazyValues();
+
+        assertEquals(2, loads[0]);
+        assertEquals("member#1", env.get("rank", String.class));
+        assertEquals(2, env.get("unused", Integer.class));
+    }
+}
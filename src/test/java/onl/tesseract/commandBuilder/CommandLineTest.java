@@ -0,0 +1,95 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CommandLineTest {
+
+    @Test
+    void tokenize_SpacesAndQuotes()
+    {
+        CommandLine line = CommandLine.tokenize("rename  \"Knights of Ni\" 'it''s'");
+
+        assertEquals(4, line.size());
+        assertEquals("rename", line.value(0));
+        assertEquals("Knights of Ni", line.value(1));
+        assertTrue(line.isQuoted(1));
+        assertEquals(9, line.column(1));
+        assertEquals("it", line.value(2));
+        assertEquals("s", line.value(3));
+    }
+
+    @Test
+    void tokenize_Escapes()
+    {
+        CommandLine line = CommandLine.tokenize("say \"a \\\"quote\\\"\" back\\ slash");
+
+        assertEquals("a \"quote\"", line.value(1));
+        assertEquals("back slash", line.value(2));
+    }
+
+    @Test
+    void tokenize_UnclosedQuote()
+    {
+        CommandLine line = CommandLine.tokenize("rename \"Knights of");
+
+        assertEquals(8, line.getUnclosedQuoteColumn());
+        assertEquals("Knights of", line.value(1));
+    }
+
+    @Test
+    void tail_AsTyped()
+    {
+        CommandLine line = CommandLine.tokenize("mail Notch \"Hi\"  there");
+
+        assertEquals("\"Hi\"  there", line.tail(2));
+    }
+
+    @Test
+    void flags()
+    {
+        CommandLine line = CommandLine.tokenize("ban -s --force -5 \"-q\" -");
+
+        assertTrue(line.isFlag(1));
+        assertTrue(line.isFlag(2));
+        assertFalse(line.isFlag(3));
+        assertFalse(line.isFlag(4));
+        assertFalse(line.isFlag(5));
+    }
+
+    @Test
+    void execute_QuotedArgs()
+    {
+        CommandSender sender = mock(CommandSender.class);
+        CommandDefinition command = new CommandBuilder("guild")
+                .quotedArgs(true)
+                .subCommand(new CommandBuilder("rename")
+                        .withArg(new StringCommandArgument("name"))
+                        .withArg(new TextCommandArgument("reason"))
+                        .command(env -> env.getSender().sendMessage(env.get("name", String.class) + "|" + env.get("reason", String.class))))
+                .build(null);
+
+        command.execute(sender, new String[] {"rename", "\"Knights", "of", "Ni\"", "\"too", "long\""});
+
+        verify(sender).sendMessage("Knights of Ni|\"too long\"");
+    }
+
+    @Test
+    void execute_UnclosedQuoteReported()
+    {
+        CommandSender sender = mock(CommandSender.class);
+        boolean[] ran = new boolean[1];
+        CommandDefinition command = new CommandBuilder("guild")
+                .withArg(new StringCommandArgument("name"))
+                .command(env -> ran[0] = true)
+                .build(null);
+
+        assertFalse(command.execute(sender, "\"Knights of"));
+
+        assertFalse(ran[0]);
+        verify(sender).sendMessage(contains("column 1"));
+    }
+}
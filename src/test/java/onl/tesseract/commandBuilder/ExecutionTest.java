@@ -1,12 +1,16 @@
 package onl.tesseract.commandBuilder;
 
+import onl.tesseract.commandBuilder.annotation.Argument;
 import onl.tesseract.commandBuilder.annotation.Command;
 import onl.tesseract.commandBuilder.annotation.CommandBody;
+import onl.tesseract.commandBuilder.annotation.Env;
+import onl.tesseract.commandBuilder.annotation.EnvInsert;
 import onl.tesseract.commandBuilder.annotation.Perm;
 import onl.tesseract.commandBuilder.exception.CommandExecutionException;
+import onl.tesseract.commandBuilder.metrics.InMemoryCommandMetrics;
 import org.bukkit.command.CommandSender;
 import org.bukkit.permissions.Permissible;
-import org.junit.Test;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions;
 
 import java.util.Map;
@@ -62,6 +66,26 @@ public class ExecutionTest {
         Assertions.assertEquals(43, env.get("bar", Integer.class));
     }
 
+    @Test
+    public void manyParametersTest()
+    {
+        CommandSender sender = mock(CommandSender.class);
+
+        new CommandWithManyParameters().command.execute(sender, new String[] {"test", "1", "2", "3"});
+
+        verify(sender).sendMessage("6 foo");
+    }
+
+    @Test
+    public void staticMethodTest()
+    {
+        CommandSender sender = mock(CommandSender.class);
+
+        new CommandWithManyParameters().command.execute(sender, new String[] {"static"});
+
+        verify(sender).sendMessage("static");
+    }
+
     @Test
     public void permission_commandBody_HasPerm() {
         CommandSender sender = PermissionTest.senderWithPermission(Map.of("a", true));
@@ -106,6 +130,65 @@ public class ExecutionTest {
 
         Assertions.assertTrue(res);
     }
+
+    @Test
+    public void textArgument_SubCommand_OnlyRemainingArgs()
+    {
+        CommandSender sender = mock(CommandSender.class);
+        CommandDefinition command = new CommandBuilder("mail")
+                .subCommand(new CommandBuilder("send")
+                        .withArg(new StringCommandArgument("to"))
+                        .withArg(new TextCommandArgument("message"))
+                        .command(env -> env.getSender().sendMessage(env.get("to", String.class) + ": " + env.get("message", String.class))))
+                .build(null);
+
+        command.execute(sender, new String[] {"send", "Notch", "Hello", "", "world"});
+
+        verify(sender).sendMessage("Notch: Hello  world");
+    }
+
+    @Test
+    public void remainingText_ConsumesArgs()
+    {
+        CommandExecutionContext context = new CommandExecutionContext(null, null, new String[] {"send", "Hello", "world"});
+
+        context.nextArg();
+
+        Assertions.assertEquals("Hello world", context.remainingText());
+        Assertions.assertFalse(context.hasNextArg());
+        Assertions.assertEquals("", context.remainingText());
+    }
+
+    @Test
+    public void failingBody_RecordedAsFailure()
+    {
+        CommandContext command = new FailingCommand();
+        InMemoryCommandMetrics metrics = new InMemoryCommandMetrics();
+        command.command.setMetrics(metrics);
+        CommandSender sender = mock(CommandSender.class);
+
+        Assertions.assertFalse(command.command.execute(sender, new String[] {"checked"}));
+        Assertions.assertThrows(IllegalStateException.class, () -> command.command.execute(sender, new String[] {"unchecked"}));
+
+        Assertions.assertEquals(1, metrics.getStats("failing.checked").getFailures());
+        Assertions.assertEquals(1, metrics.getStats("failing.unchecked").getFailures());
+    }
+}
+
+@Command(name = "failing")
+class FailingCommand extends CommandContext {
+
+    @Command
+    void checked() throws Exception
+    {
+        throw new Exception("checked");
+    }
+
+    @Command
+    void unchecked()
+    {
+        throw new IllegalStateException("unchecked");
+    }
 }
 
 @Command(name = "a", permission = @Perm(mode = Perm.Mode.AUTO))
@@ -129,4 +212,26 @@ class PermissionsTest extends CommandContext {
 
         }
     }
-}
\ No newline at end of file
+}
+@Command
+class CommandWithManyParameters extends CommandContext {
+
+    @EnvInsert("foo")
+    String insertFoo()
+    {
+        return "foo";
+    }
+
+    @Command
+    void test(@Argument("a") IntegerArgument a, @Argument("b") IntegerArgument b, @Argument(value = "c", clazz = IntegerArgument.class) int c,
+              @Env(key = "foo") String foo, CommandEnvironment env, CommandSender sender)
+    {
+        sender.sendMessage((a.get() + b.get() + c) + " " + foo);
+    }
+
+    @Command(name = "static")
+    static void staticCommand(CommandSender sender)
+    {
+        sender.sendMessage("static");
+    }
+}
@@ -0,0 +1,73 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class FrozenTreeTest {
+
+    @Test
+    void builtTree_CollectionsUnmodifiable()
+    {
+        CommandDefinition command = new CommandBuilder("guild")
+                .subCommand(new CommandBuilder("info")
+                        .alias("i")
+                        .withArg(new IntegerArgument("page")))
+                .build(null);
+        CommandDefinition info = command.getSubCommands().get("info");
+
+        assertThrows(UnsupportedOperationException.class, () -> command.getSubCommands().remove("info"));
+        assertThrows(UnsupportedOperationException.class, () -> command.getSubCommandsAliases().put("x", info));
+        assertThrows(UnsupportedOperationException.class, () -> info.getArguments().clear());
+        assertThrows(UnsupportedOperationException.class, () -> info.getAliases().add("x"));
+        assertEquals(List.of("help", "info"), new ArrayList<>(command.getSubCommands().keySet()));
+    }
+
+    @Test
+    void builderChangedAfterBuild_TreeUnchanged()
+    {
+        CommandBuilder builder = new CommandBuilder("root")
+                .withArg(new IntegerArgument("page"));
+        CommandDefinition command = builder.build(null);
+
+        builder.withArg(new StringCommandArgument("name"))
+               .alias("r");
+
+        assertEquals(1, command.getArguments().size());
+        assertTrue(command.getAliases().isEmpty());
+    }
+
+    @Test
+    void unbuiltTree_Rejected()
+    {
+        CommandDefinition root = new CommandBuilder("root").build(null);
+        CommandDefinition detached = new CommandBuilder("sub").build(root);
+
+        assertThrows(IllegalStateException.class, () -> detached.execute(mock(CommandSender.class), new String[0]));
+        assertThrows(IllegalStateException.class, () -> detached.tabComplete(mock(CommandSender.class), new String[]{""}));
+        assertThrows(IllegalStateException.class, () -> detached.help(mock(CommandSender.class)));
+        assertThrows(IllegalStateException.class, () -> detached.helpGetPage(mock(CommandSender.class), 0));
+    }
+
+    @Test
+    void builtTree_DispatchedFromOtherThread() throws InterruptedException
+    {
+        List<Integer> pages = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("guild")
+                .subCommand(new CommandBuilder("info")
+                        .withArg(new IntegerArgument("page"))
+                        .command(env -> pages.add(env.get("page", Integer.class))))
+                .build(null);
+
+        Thread thread = new Thread(() -> command.execute(mock(CommandSender.class), new String[]{"info", "2"}));
+        thread.start();
+        thread.join();
+
+        assertEquals(List.of(2), pages);
+    }
+}
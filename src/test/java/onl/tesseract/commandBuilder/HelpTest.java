@@ -0,0 +1,91 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class HelpTest {
+
+    private CommandDefinition buildCommand(int subCommandCount)
+    {
+        CommandBuilder builder = new CommandBuilder("cmd").description("Root command");
+        for (int i = 0; i < subCommandCount; i++)
+            builder.subCommand(new CommandBuilder("sub" + i).description("Sub " + i));
+        builder.subCommand(new CommandBuilder("admin").permission("cmd.admin"));
+        return builder.build(null);
+    }
+
+    private static boolean contains(String[] page, String text)
+    {
+        return Arrays.stream(page).anyMatch(line -> line.contains(text));
+    }
+
+    @Test
+    void helpPage_ListsVisibleSubCommands()
+    {
+        CommandSender sender = mock(CommandSender.class);
+
+        String[] page = buildCommand(2).helpGetPage(sender, 0);
+
+        assertTrue(contains(page, "Root command"));
+        assertTrue(contains(page, "sub0"));
+        assertTrue(contains(page, "sub1"));
+        assertFalse(contains(page, "admin"));
+    }
+
+    @Test
+    void helpPage_DependsOnPermissions()
+    {
+        CommandDefinition command = buildCommand(2);
+        CommandSender admin = PermissionTest.senderWithPermission(Map.of("cmd.admin", true));
+        CommandSender sender = mock(CommandSender.class);
+
+        assertFalse(contains(command.helpGetPage(sender, 0), "admin"));
+        assertTrue(contains(command.helpGetPage(admin, 0), "admin"));
+        assertFalse(contains(command.helpGetPage(sender, 0), "admin"));
+    }
+
+    @Test
+    void helpPage_Cached_ReturnsCopy()
+    {
+        CommandDefinition command = buildCommand(2);
+        CommandSender sender = mock(CommandSender.class);
+
+        String[] first = command.helpGetPage(sender, 0);
+        first[2] = "modified";
+        String[] second = command.helpGetPage(sender, 0);
+
+        assertNotSame(first, second);
+        assertNotEquals("modified", second[2]);
+    }
+
+    @Test
+    void helpPage_PageCount()
+    {
+        CommandDefinition command = buildCommand(20);
+        CommandSender sender = mock(CommandSender.class);
+
+        // Description + 20 subcommands + help
+        assertTrue(command.helpGetPage(sender, 0)[1].endsWith("1/3"));
+        assertTrue(contains(command.helpGetPage(sender, 2), "sub"));
+        assertThrows(IllegalArgumentException.class, () -> command.helpGetPage(sender, 3));
+        assertThrows(IllegalArgumentException.class, () -> command.helpGetPage(sender, -1));
+    }
+
+    @Test
+    void help_DefaultHelpCommand_SendsFirstPage()
+    {
+        CommandDefinition command = buildCommand(2);
+        CommandSender sender = mock(CommandSender.class);
+        String[] expected = command.helpGetPage(sender, 0);
+
+        command.help(sender);
+
+        verify(sender).sendMessage(expected);
+    }
+}
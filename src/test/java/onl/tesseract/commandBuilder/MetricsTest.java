@@ -0,0 +1,113 @@
+package onl.tesseract.commandBuilder;
+
+import onl.tesseract.commandBuilder.metrics.CommandStats;
+import onl.tesseract.commandBuilder.metrics.InMemoryCommandMetrics;
+import onl.tesseract.commandBuilder.metrics.LatencyHistogram;
+import org.bukkit.command.CommandSender;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MetricsTest {
+
+    private CommandDefinition buildCommand(InMemoryCommandMetrics metrics)
+    {
+        return new CommandBuilder("guild")
+                .metrics(metrics)
+                .subCommand(new CommandBuilder("member")
+                        .subCommand(new CommandBuilder("kick")
+                                .withArg(new IntegerArgument("id"))
+                                .command(env -> {
+                                    if (env.get("id", Integer.class) == 0)
+                                        throw new IllegalStateException();
+                                }))
+                        .subCommand(new CommandBuilder("ban")
+                                .permission("ban")
+                                .command(env -> {
+                                })))
+                .build(null);
+    }
+
+    @Test
+    void path_FromRoot()
+    {
+        CommandDefinition command = buildCommand(new InMemoryCommandMetrics());
+
+        assertEquals("guild", command.getPath());
+        assertEquals("guild.member.kick", command.getSubCommands().get("member").getSubCommands().get("kick").getPath());
+    }
+
+    @Test
+    void execute_RecordsInvocationsAndTimes()
+    {
+        InMemoryCommandMetrics metrics = new InMemoryCommandMetrics();
+        CommandDefinition command = buildCommand(metrics);
+        CommandSender sender = mock(CommandSender.class);
+
+        command.execute(sender, new String[]{"member", "kick", "3"});
+        command.execute(sender, new String[]{"member", "kick", "4"});
+
+        CommandStats stats = metrics.getStats("guild.member.kick");
+        assertNotNull(stats);
+        assertEquals(2, stats.getInvocations());
+        assertEquals(2, stats.getParseTime().getCount());
+        assertEquals(2, stats.getBodyTime().getCount());
+        assertEquals(0, stats.getFailures());
+        // Intermediate commands only parse their arguments
+        assertEquals(0, metrics.getStats("guild.member").getInvocations());
+    }
+
+    @Test
+    void execute_RecordsErrors()
+    {
+        InMemoryCommandMetrics metrics = new InMemoryCommandMetrics();
+        CommandDefinition command = buildCommand(metrics);
+        CommandSender sender = PermissionTest.senderWithPermission(Map.of());
+
+        command.execute(sender, new String[]{"member", "kick", "notANumber"});
+        command.execute(sender, new String[]{"member", "ban"});
+        assertThrows(IllegalStateException.class, () -> command.execute(sender, new String[]{"member", "kick", "0"}));
+
+        CommandStats kick = metrics.getStats("guild.member.kick");
+        assertEquals(1, kick.getParseErrors());
+        assertEquals(1, kick.getFailures());
+        assertEquals(1.0, kick.getFailureRate());
+        assertEquals(1, metrics.getStats("guild.member.ban").getPermissionDenials());
+        // Every traversed command path
+        assertEquals(4, metrics.dump().size());
+    }
+
+    @Test
+    void setMetrics_AppliesToSubCommands()
+    {
+        CommandDefinition command = buildCommand(new InMemoryCommandMetrics());
+        InMemoryCommandMetrics metrics = new InMemoryCommandMetrics();
+        command.setMetrics(metrics);
+
+        command.execute(mock(CommandSender.class), new String[]{"member", "kick", "3"});
+
+        assertEquals(1, metrics.getStats("guild.member.kick").getInvocations());
+    }
+
+    @Test
+    void histogram_Percentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000L);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500, histogram.getMean(), 0.001);
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 * 0.07);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 * 0.07);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
@@ -1,12 +1,20 @@
 package onl.tesseract.commandBuilder;
 
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 import org.bukkit.permissions.Permissible;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -24,6 +32,18 @@ class PermissionTest {
         return mock;
     }
 
+    private static Player playerWithPermission(UUID uuid, Map<String, Boolean> perms)
+    {
+        Player mock = mock(Player.class);
+        when(mock.getUniqueId()).thenReturn(uuid);
+        when(mock.isPermissionSet(anyString())).thenReturn(false);
+        perms.forEach((name, flag) -> {
+            when(mock.isPermissionSet(name)).thenReturn(true);
+            when(mock.hasPermission(name)).thenReturn(flag);
+        });
+        return mock;
+    }
+
     @Test
     void simpleHasPermissionTest()
     {
@@ -96,4 +116,111 @@ class PermissionTest {
         assertFalse(Permission.get("a.c").hasPermission(sender));
         assertTrue(Permission.get("a").hasPermission(sender));
     }
+
+    @Test
+    void cache_ResolvedOnce()
+    {
+        Permission.setCacheEnabled(true);
+        try
+        {
+            Player sender = playerWithPermission(UUID.randomUUID(), Map.of("a", true));
+            Permission permission = Permission.get("a.b");
+
+            assertTrue(permission.hasPermission(sender));
+            assertTrue(permission.hasPermission(sender));
+
+            verify(sender, times(1)).hasPermission("a");
+        }
+        finally
+        {
+            Permission.setCacheEnabled(false);
+        }
+    }
+
+    @Test
+    void cache_Invalidate()
+    {
+        Permission.setCacheEnabled(true);
+        try
+        {
+            UUID uuid = UUID.randomUUID();
+            Player sender = playerWithPermission(uuid, Map.of("a", true));
+            Permission permission = Permission.get("a");
+            assertTrue(permission.hasPermission(sender));
+
+            when(sender.hasPermission("a")).thenReturn(false);
+            assertTrue(permission.hasPermission(sender));
+
+            Permission.invalidateCache(uuid);
+            assertFalse(permission.hasPermission(sender));
+        }
+        finally
+        {
+            Permission.setCacheEnabled(false);
+        }
+    }
+
+    @Test
+    void cache_NotReusedAfterRejoin()
+    {
+        Permission.setCacheEnabled(true);
+        try
+        {
+            UUID uuid = UUID.randomUUID();
+            Permission permission = Permission.get("a");
+            assertTrue(permission.hasPermission(playerWithPermission(uuid, Map.of("a", true))));
+
+            assertFalse(permission.hasPermission(playerWithPermission(uuid, Map.of("a", false))));
+        }
+        finally
+        {
+            Permission.setCacheEnabled(false);
+        }
+    }
+
+    @Test
+    void cache_OtherSendersNotCached()
+    {
+        Permission.setCacheEnabled(true);
+        try
+        {
+            CommandSender sender = senderWithPermission(Map.of("a", true));
+            Permission permission = Permission.get("a");
+
+            assertTrue(permission.hasPermission(sender));
+            assertTrue(permission.hasPermission(sender));
+
+            verify(sender, times(2)).hasPermission("a");
+        }
+        finally
+        {
+            Permission.setCacheEnabled(false);
+        }
+    }
+
+    @Test
+    void get_Concurrent_SameInstances() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<Permission>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++)
+            {
+                String name = "concurrent." + (i % 4) + ".leaf";
+                futures.add(executor.submit(() -> Permission.get(name)));
+            }
+            for (int i = 0; i < futures.size(); i++)
+            {
+                Permission permission = futures.get(i).get();
+                assertSame(Permission.get("concurrent." + (i % 4) + ".leaf"), permission);
+                assertSame(Permission.get("concurrent." + (i % 4)), permission.getParent());
+                assertSame(Permission.get("concurrent"), permission.getParent().getParent());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
 }
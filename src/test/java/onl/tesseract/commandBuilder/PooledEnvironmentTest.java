@@ -0,0 +1,115 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PooledEnvironmentTest {
+
+    @Test
+    void syncExecutions_ReuseClearedEnvironment()
+    {
+        List<CommandEnvironment> envs = new ArrayList<>();
+        List<Integer> pages = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .pooledEnvironments(true)
+                .withOptionalArg(new IntegerArgument("page"), null)
+                .command(env -> {
+                    envs.add(env);
+                    pages.add(env.get("page", Integer.class));
+                })
+                .build(null);
+
+        CommandSender first = mock(CommandSender.class);
+        CommandSender second = mock(CommandSender.class);
+        command.execute(first, new String[]{"3"});
+        command.execute(second, new String[0]);
+
+        assertEquals(3, pages.get(0));
+        assertNull(pages.get(1));
+    }
+
+    @Test
+    void escapedEnvironment_FailsOnceReleased()
+    {
+        List<CommandEnvironment> envs = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .pooledEnvironments(true)
+                .withArg(new IntegerArgument("page"))
+                .command(envs::add)
+                .build(null);
+
+        command.execute(mock(CommandSender.class), new String[]{"1"});
+        CommandEnvironment escaped = envs.get(0);
+        command.execute(mock(CommandSender.class), new String[]{"2"});
+
+        assertNotSame(escaped, envs.get(1));
+        assertThrows(IllegalStateException.class, () -> escaped.get("page", Integer.class));
+        assertThrows(IllegalStateException.class, escaped::getSender);
+        assertThrows(IllegalStateException.class, escaped::retain);
+    }
+
+    @Test
+    void retainedEnvironment_NotReused()
+    {
+        List<CommandEnvironment> envs = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .pooledEnvironments(true)
+                .withArg(new IntegerArgument("page"))
+                .command(env -> envs.add(env.retain()))
+                .build(null);
+
+        command.execute(mock(CommandSender.class), new String[]{"1"});
+        command.execute(mock(CommandSender.class), new String[]{"2"});
+
+        assertNotSame(envs.get(0), envs.get(1));
+        assertEquals(1, envs.get(0).get("page", Integer.class));
+        assertEquals(2, envs.get(1).get("page", Integer.class));
+    }
+
+    @Test
+    void asyncBody_EnvironmentNotReused()
+    {
+        List<Runnable> tasks = new ArrayList<>();
+        List<Integer> pages = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .pooledEnvironments(true)
+                .asyncExecutor(tasks::add)
+                .setAsync(true)
+                .withArg(new IntegerArgument("page"))
+                .command(env -> pages.add(env.get("page", Integer.class)))
+                .build(null);
+
+        command.execute(mock(CommandSender.class), new String[]{"1"});
+        command.execute(mock(CommandSender.class), new String[]{"2"});
+        tasks.forEach(Runnable::run);
+
+        assertEquals(List.of(1, 2), pages);
+    }
+
+    @Test
+    void nestedExecution_UsesOwnEnvironment()
+    {
+        List<String> received = new ArrayList<>();
+        CommandDefinition[] command = new CommandDefinition[1];
+        command[0] = new CommandBuilder("root")
+                .pooledEnvironments(true)
+                .withArg(new StringCommandArgument("name"))
+                .command(env -> {
+                    String name = env.get("name", String.class);
+                    if (name.equals("outer"))
+                        command[0].execute(env.getSender(), new String[]{"inner"});
+                    received.add(name + ":" + env.get("name", String.class));
+                })
+                .build(null);
+
+        command[0].execute(mock(CommandSender.class), new String[]{"outer"});
+
+        assertEquals(List.of("inner:inner", "outer:outer"), received);
+    }
+}
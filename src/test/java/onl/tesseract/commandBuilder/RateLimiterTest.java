@@ -0,0 +1,146 @@
+package onl.tesseract.commandBuilder;
+
+import onl.tesseract.commandBuilder.metrics.InMemoryCommandMetrics;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RateLimiterTest {
+
+    private static int parsed;
+
+    public static class CountedArgument extends CommandArgument<String> {
+        public CountedArgument(final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public void define(final CommandArgumentBuilderSteps.@NotNull Parser<String> builder)
+        {
+            builder.parser((input, env) -> {
+                       parsed++;
+                       return input;
+                   })
+                   .tabCompleter((input, env) -> List.of());
+        }
+    }
+
+    @Test
+    void burstThenRefill()
+    {
+        long[] now = {0};
+        RateLimiter limiter = new RateLimiter(3, Duration.ofSeconds(3), () -> now[0]);
+        UUID player = UUID.randomUUID();
+
+        assertEquals(0, limiter.tryAcquire(player));
+        assertEquals(0, limiter.tryAcquire(player));
+        assertEquals(0, limiter.tryAcquire(player));
+        assertEquals(Duration.ofSeconds(1).toNanos(), limiter.tryAcquire(player));
+
+        now[0] = Duration.ofMillis(1500).toNanos();
+        assertEquals(0, limiter.tryAcquire(player));
+        assertEquals(Duration.ofMillis(500).toNanos(), limiter.tryAcquire(player));
+        // Other players have their own bucket
+        assertEquals(0, limiter.tryAcquire(UUID.randomUUID()));
+    }
+
+    @Test
+    void fullBuckets_Expired()
+    {
+        long[] now = {0};
+        RateLimiter limiter = new RateLimiter(2, Duration.ofSeconds(1), () -> now[0]);
+        for (int i = 0; i < 10; i++)
+            limiter.tryAcquire(UUID.randomUUID());
+        assertEquals(10, limiter.size());
+
+        now[0] = Duration.ofMinutes(5).toNanos();
+        UUID player = UUID.randomUUID();
+        assertEquals(0, limiter.tryAcquire(player));
+        assertEquals(1, limiter.size());
+    }
+
+    @Test
+    void rejectedExecution_SkipsBody()
+    {
+        parsed = 0;
+        InMemoryCommandMetrics metrics = new InMemoryCommandMetrics();
+        int[] ran = new int[1];
+        CommandDefinition command = new CommandBuilder("guild")
+                .metrics(metrics)
+                .subCommand(new CommandBuilder("info")
+                        .cooldown(Duration.ofMinutes(1))
+                        .withArg(new CountedArgument("name"))
+                        .command(env -> ran[0]++))
+                .build(null);
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+
+        command.execute(player, new String[]{"info", "Knights"});
+        command.execute(player, new String[]{"info", "Knights"});
+
+        assertEquals(1, ran[0]);
+        // The rejected execution does not parse its args
+        assertEquals(1, parsed);
+        assertEquals(1, metrics.getStats("guild.info").getRateLimited());
+        verify(player).sendMessage(contains("60s"));
+    }
+
+    @Test
+    void rejectedGreedyExecution_SkipsParsingAndPredicates()
+    {
+        parsed = 0;
+        int[] tested = new int[1];
+        CommandDefinition command = new CommandBuilder("mail")
+                .cooldown(Duration.ofMinutes(1))
+                .predicate(new PredicateDefinition(env -> ++tested[0] > 0, false))
+                .withArg(new CountedArgument("to"))
+                .withArg(new TextCommandArgument("message"))
+                .command(env -> {})
+                .build(null);
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+        when(player.hasPermission(anyString())).thenReturn(true);
+
+        command.execute(player, new String[]{"Notch", "help", "me"});
+        command.execute(player, new String[]{"Notch", "help", "me"});
+
+        assertEquals(1, parsed);
+        assertEquals(1, tested[0]);
+    }
+
+    @Test
+    void subCommandDispatch_DoesNotUseParentPermits()
+    {
+        int[] ran = new int[2];
+        CommandDefinition command = new CommandBuilder("guild")
+                .cooldown(Duration.ofMinutes(1))
+                .command(env -> ran[0]++)
+                .subCommand(new CommandBuilder("info")
+                        .withArg(new StringCommandArgument("name"))
+                        .command(env -> ran[1]++))
+                .build(null);
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+        when(player.hasPermission(anyString())).thenReturn(true);
+
+        command.execute(player, new String[]{"info", "Knights"});
+        command.execute(player, new String[]{"info", "Knights"});
+        command.execute(player, new String[]{"help"});
+        // Usage error of the subcommand
+        command.execute(player, new String[]{"info"});
+        command.execute(player, new String[0]);
+        command.execute(player, new String[0]);
+
+        assertEquals(2, ran[1]);
+        assertEquals(1, ran[0]);
+        verify(player, times(1)).sendMessage(contains("Please wait"));
+    }
+}
@@ -7,9 +7,10 @@ import onl.tesseract.commandBuilder.annotation.Perm;
 import org.bukkit.command.CommandSender;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.junit.Before;
-import org.junit.Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -20,7 +21,7 @@ public class SubCommandTest {
 
     private CommandSender sender;
 
-    @Before
+    @BeforeEach
     public void setup()
     {
         sender = mock(CommandSender.class);
@@ -79,6 +80,40 @@ public class SubCommandTest {
         verify(sender).sendMessage(any(String[].class));
     }
 
+    @Test
+    public void dispatch_NameTakesPrecedenceOverAlias()
+    {
+        List<String> received = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("root")
+                .subCommand(new CommandBuilder("list").command(env -> received.add("list")))
+                .subCommand(new CommandBuilder("show").alias("list").alias("ls").command(env -> received.add("show")))
+                .build(null);
+
+        command.execute(sender, new String[]{"list"});
+        command.execute(sender, new String[]{"ls"});
+
+        assertEquals(List.of("list", "show"), received);
+    }
+
+    @Test
+    public void dispatch_EachLevelCheckedAndParsed()
+    {
+        List<String> received = new ArrayList<>();
+        CommandDefinition command = new CommandBuilder("guild")
+                .predicate(new PredicateDefinition(env -> received.add("guild"), false))
+                .withArg(new StringCommandArgument("name"))
+                .subCommand(new CommandBuilder("member")
+                        .predicate(new PredicateDefinition(env -> received.add("member " + env.get("name", String.class)), false))
+                        .subCommand(new CommandBuilder("kick")
+                                .withArg(new StringCommandArgument("player"))
+                                .command(env -> received.add("kick " + env.get("player", String.class)))))
+                .build(null);
+
+        assertTrue(command.execute(sender, new String[]{"Knights", "member", "kick", "Arthur"}));
+
+        assertEquals(List.of("guild", "member Knights", "kick Arthur"), received);
+    }
+
     @Test
     public void permissionPresenceCheck_NoPerm_Root()
     {
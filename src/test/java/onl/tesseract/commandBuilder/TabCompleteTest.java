@@ -0,0 +1,432 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TabCompleteTest {
+    CommandSender sender;
+
+    @BeforeEach
+    void setUp()
+    {
+        sender = mock(CommandSender.class);
+    }
+
+    private CommandDefinition buildCommand()
+    {
+        return new CommandBuilder("cmd")
+                .subCommand(new CommandBuilder("add").alias("append"))
+                .subCommand(new CommandBuilder("admin").permission("cmd.admin"))
+                .subCommand(new CommandBuilder("hidden").predicate(new PredicateDefinition(env -> false, true)))
+                .subCommand(new CommandBuilder("list").alias("ls").alias("all"))
+                .build(null);
+    }
+
+    @Test
+    void subCommandNames_EmptyPrefix()
+    {
+        List<String> res = buildCommand().tabComplete(sender, new String[] {""});
+
+        assertEquals(Set.of("add", "append", "list", "ls", "all", "help"), new HashSet<>(res));
+    }
+
+    @Test
+    void subCommandNames_Prefix()
+    {
+        List<String> res = buildCommand().tabComplete(sender, new String[] {"a"});
+
+        assertEquals(Set.of("add", "append", "all"), new HashSet<>(res));
+    }
+
+    @Test
+    void subCommandNames_PermissionFiltered()
+    {
+        CommandSender admin = PermissionTest.senderWithPermission(Map.of("cmd.admin", true));
+
+        List<String> res = buildCommand().tabComplete(admin, new String[] {"ad"});
+
+        assertEquals(Set.of("add", "admin"), new HashSet<>(res));
+    }
+
+    @Test
+    void subCommandNames_NoMatch()
+    {
+        List<String> res = buildCommand().tabComplete(sender, new String[] {"z"});
+
+        assertEquals(List.of(), res);
+    }
+
+    @Test
+    void subCommandNames_NameIsAlsoAlias()
+    {
+        CommandDefinition command = new CommandBuilder("cmd")
+                .subCommand(new CommandBuilder("foo"))
+                .subCommand(new CommandBuilder("bar").alias("foo"))
+                .build(null);
+
+        List<String> res = command.tabComplete(sender, new String[] {"foo"});
+
+        assertEquals(List.of("foo", "foo"), res);
+    }
+
+    /**
+     * Futures returned by the completer of {@link PlayerNameArgument}, completed by the tests
+     */
+    private static final List<CompletableFuture<List<String>>> lookups = new ArrayList<>();
+
+    public static class PlayerNameArgument extends CommandArgument<String> {
+        public PlayerNameArgument(final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public void define(final CommandArgumentBuilderSteps.@NotNull Parser<String> builder)
+        {
+            builder.parser((input, env) -> input)
+                   .asyncTabCompleter((input, env) -> {
+                       CompletableFuture<List<String>> lookup = new CompletableFuture<>();
+                       lookups.add(lookup);
+                       return lookup;
+                   });
+        }
+    }
+
+    private CommandDefinition buildAsyncCommand(TabCompletionCache cache)
+    {
+        lookups.clear();
+        return new CommandBuilder("cmd")
+                .tabCompletionCache(cache)
+                .subCommand(new CommandBuilder("invite")
+                        .withArg(new PlayerNameArgument("player")))
+                .build(null);
+    }
+
+    @Test
+    void async_NewerKeystrokeCancelsLookup()
+    {
+        CommandDefinition command = buildAsyncCommand(null);
+
+        CompletableFuture<List<String>> first = command.tabCompleteAsync(sender, new String[] {"invite", "N"});
+        CompletableFuture<List<String>> second = command.tabCompleteAsync(sender, new String[] {"invite", "No"});
+
+        assertTrue(lookups.get(0).isCancelled());
+        assertTrue(first.isCompletedExceptionally());
+        lookups.get(1).complete(List.of("Notch", "Nobody", "Steve"));
+        assertEquals(List.of("Notch", "Nobody"), second.join());
+    }
+
+    @Test
+    void async_OtherSendersNotCancelled()
+    {
+        CommandDefinition command = buildAsyncCommand(null);
+
+        command.tabCompleteAsync(sender, new String[] {"invite", "N"});
+        command.tabCompleteAsync(mock(CommandSender.class), new String[] {"invite", "N"});
+
+        assertFalse(lookups.get(0).isCancelled());
+    }
+
+    @Test
+    void cache_ReusedForSamePrefix()
+    {
+        CommandDefinition command = buildAsyncCommand(new TabCompletionCache(Duration.ofMinutes(1), 1024, true));
+
+        CompletableFuture<List<String>> first = command.tabCompleteAsync(sender, new String[] {"invite", "N"});
+        lookups.get(0).complete(List.of("Notch"));
+        first.join();
+        List<String> res = command.tabCompleteAsync(mock(CommandSender.class), new String[] {"invite", "N"}).join();
+
+        assertEquals(List.of("Notch"), res);
+        assertEquals(1, lookups.size());
+    }
+
+    @Test
+    void cache_BySender()
+    {
+        CommandDefinition command = buildAsyncCommand(new TabCompletionCache(Duration.ofMinutes(1)));
+
+        CompletableFuture<List<String>> first = command.tabCompleteAsync(sender, new String[] {"invite", "N"});
+        lookups.get(0).complete(List.of("Notch"));
+        first.join();
+        command.tabCompleteAsync(mock(CommandSender.class), new String[] {"invite", "N"});
+        List<String> res = command.tabCompleteAsync(sender, new String[] {"invite", "N"}).join();
+
+        assertEquals(List.of("Notch"), res);
+        assertEquals(2, lookups.size());
+    }
+
+    @Test
+    void cache_SyncCompletionDoesNotWait()
+    {
+        CommandDefinition command = buildAsyncCommand(new TabCompletionCache(Duration.ofMinutes(1)));
+
+        assertEquals(List.of(), command.tabComplete(sender, new String[] {"invite", "N"}));
+        lookups.get(0).complete(List.of("Notch"));
+
+        assertEquals(List.of("Notch"), command.tabComplete(sender, new String[] {"invite", "N"}));
+    }
+
+    @Test
+    void cache_Expires()
+    {
+        CommandDefinition command = buildAsyncCommand(new TabCompletionCache(Duration.ZERO));
+
+        command.tabCompleteAsync(sender, new String[] {"invite", "N"});
+        lookups.get(0).complete(List.of("Notch"));
+        command.tabCompleteAsync(sender, new String[] {"invite", "N"});
+
+        assertEquals(2, lookups.size());
+    }
+
+    public static class KnownNameArgument extends CommandArgument<String> {
+        public KnownNameArgument(final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public void define(final CommandArgumentBuilderSteps.@NotNull Parser<String> builder)
+        {
+            builder.parser((input, env) -> input)
+                   .asyncTabCompleter((input, env) -> CompletableFuture.completedFuture(List.of("Notch", "Steve")));
+        }
+    }
+
+    @Test
+    void syncWithoutCache_CompletedLookupReturned()
+    {
+        CommandDefinition command = new CommandBuilder("cmd")
+                .subCommand(new CommandBuilder("invite")
+                        .withArg(new KnownNameArgument("player")))
+                .build(null);
+
+        assertEquals(List.of("Notch"), command.tabComplete(sender, new String[] {"invite", "N"}));
+    }
+
+    @Test
+    void syncWithoutCache_DoesNotWait()
+    {
+        CommandDefinition command = buildAsyncCommand(null);
+
+        assertEquals(List.of(), command.tabComplete(sender, new String[] {"invite", "N"}));
+        assertFalse(lookups.get(0).isDone());
+    }
+
+    public static class UnreachableNameArgument extends CommandArgument<String> {
+        public UnreachableNameArgument(final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public void define(final CommandArgumentBuilderSteps.@NotNull Parser<String> builder)
+        {
+            builder.parser((input, env) -> input)
+                   .asyncTabCompleter((input, env) -> CompletableFuture.failedFuture(new IllegalStateException("Offline")));
+        }
+    }
+
+    @Test
+    void sync_FailedLookupHasNoCompletions()
+    {
+        CommandDefinition command = new CommandBuilder("cmd")
+                .subCommand(new CommandBuilder("invite")
+                        .withArg(new UnreachableNameArgument("player")))
+                .build(null);
+
+        assertEquals(List.of(), command.tabComplete(sender, new String[] {"invite", "N"}));
+    }
+
+    @Test
+    void syncWithCache_CompletedLookupReturned()
+    {
+        CommandDefinition command = new CommandBuilder("cmd")
+                .tabCompletionCache(new TabCompletionCache(Duration.ofMinutes(1)))
+                .subCommand(new CommandBuilder("invite")
+                        .withArg(new KnownNameArgument("player")))
+                .build(null);
+
+        assertEquals(List.of("Steve"), command.tabComplete(sender, new String[] {"invite", "S"}));
+    }
+
+    private static int parses;
+    private static CommandEnvironment lastParseEnv;
+
+    public static class CountingArgument extends CommandArgument<String> {
+        public CountingArgument(final String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public void define(final CommandArgumentBuilderSteps.@NotNull Parser<String> builder)
+        {
+            builder.parser((input, env) -> {
+                       parses++;
+                       lastParseEnv = env;
+                       return input;
+                   })
+                   .tabCompleter((input, env) -> List.of(input + "1", input + "2"));
+        }
+    }
+
+    private CommandDefinition buildCountingCommand()
+    {
+        parses = 0;
+        return new CommandBuilder("cmd")
+                .subCommand(new CommandBuilder("mail")
+                        .withArg(new CountingArgument("to"))
+                        .withArg(new CountingArgument("subject"))
+                        .withArg(new CountingArgument("body")))
+                .build(null);
+    }
+
+    @Test
+    void session_PreviousArgsParsedOnce()
+    {
+        CommandDefinition command = buildCountingCommand();
+
+        command.tabComplete(sender, new String[] {"mail", "N"});
+        command.tabComplete(sender, new String[] {"mail", "No"});
+        command.tabComplete(sender, new String[] {"mail", "Notch", ""});
+        command.tabComplete(sender, new String[] {"mail", "Notch", "H"});
+        List<String> res = command.tabComplete(sender, new String[] {"mail", "Notch", "Hi", "t"});
+
+        assertEquals(List.of("t1", "t2"), res);
+        assertEquals(2, parses);
+    }
+
+    @Test
+    void session_RestartedWhenPreviousArgChanges()
+    {
+        CommandDefinition command = buildCountingCommand();
+        CommandEnvironment env = new CommandEnvironment(sender);
+
+        command.tabComplete(sender, new String[] {"mail", "Notch", ""});
+        command.tabComplete(sender, new String[] {"mail", "Steve", ""});
+        command.tabComplete(sender, env, new String[] {"mail", "Alex", ""});
+
+        assertEquals(3, parses);
+        assertEquals("Alex", env.get("to", String.class));
+    }
+
+    @Test
+    void session_BySender()
+    {
+        CommandDefinition command = buildCountingCommand();
+
+        command.tabComplete(sender, new String[] {"mail", "Notch", ""});
+        command.tabComplete(mock(CommandSender.class), new String[] {"mail", "Notch", ""});
+
+        assertEquals(2, parses);
+    }
+
+    private static Player player(UUID uuid)
+    {
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(uuid);
+        return player;
+    }
+
+    @Test
+    void session_ByPlayerUuid()
+    {
+        CommandDefinition command = buildCountingCommand();
+        UUID uuid = UUID.randomUUID();
+
+        command.tabComplete(player(uuid), new String[] {"mail", "Notch", ""});
+        command.tabComplete(player(uuid), new String[] {"mail", "Notch", "H"});
+
+        assertEquals(1, parses);
+    }
+
+    @Test
+    void session_SenderNotKeptBetweenKeystrokes()
+    {
+        CommandDefinition command = buildCountingCommand();
+
+        command.tabComplete(player(UUID.randomUUID()), new String[] {"mail", "Notch", ""});
+
+        assertNull(lastParseEnv.getSender());
+        assertEquals("Notch", lastParseEnv.get("to", String.class));
+    }
+
+    @Test
+    void session_EndedOnQuit()
+    {
+        CommandDefinition command = buildCountingCommand();
+        UUID uuid = UUID.randomUUID();
+
+        command.tabComplete(player(uuid), new String[] {"mail", "Notch", ""});
+        command.endCompletion(uuid);
+        command.tabComplete(player(uuid), new String[] {"mail", "Notch", "H"});
+
+        assertEquals(2, parses);
+    }
+
+    @Test
+    void session_IdleExpired()
+    {
+        CommandDefinition command = buildCountingCommand();
+
+        command.tabComplete(player(UUID.randomUUID()), new String[] {"mail", "Notch", ""});
+        command.tabComplete(sender, new String[] {"mail", "Notch", ""});
+        command.expireCompletionSessions(System.nanoTime() + CommandDefinition.COMPLETION_SESSION_TIMEOUT);
+
+        assertTrue(command.getCompletionSessions().isEmpty());
+    }
+
+    @Test
+    void session_ConcurrentKeystrokesSerialized() throws InterruptedException
+    {
+        CommandDefinition command = buildCountingCommand();
+        List<Throwable> errors = new ArrayList<>();
+        Runnable completions = () -> {
+            try
+            {
+                for (int i = 0; i < 1000; i++)
+                {
+                    String[] args = i % 2 == 0 ? new String[] {"mail", "Notch", "Hi", ""} : new String[] {"mail", "Steve", ""};
+                    List<String> res = i % 4 < 2 ? command.tabComplete(sender, args) : command.tabCompleteAsync(sender, args).join();
+                    assertEquals(List.of("1", "2"), res);
+                }
+            }
+            catch (Throwable e)
+            {
+                synchronized (errors)
+                {
+                    errors.add(e);
+                }
+            }
+        };
+
+        Thread first = new Thread(completions);
+        Thread second = new Thread(completions);
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+
+        assertEquals(List.of(), errors);
+    }
+}
@@ -0,0 +1,90 @@
+package onl.tesseract.commandBuilder;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TickBudgetTest {
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void slowBody_PromotedAfterRepeatedOffences()
+    {
+        TickBudget budget = new TickBudget(Duration.ofMillis(1), 2);
+        AtomicInteger executions = new AtomicInteger();
+        CommandDefinition command = new CommandBuilder("root")
+                .tickBudget(budget)
+                .subCommand(new CommandBuilder("slow").command(env -> {
+                    executions.incrementAndGet();
+                    sleep(5);
+                }))
+                .build(null);
+        Plugin plugin = mock(Plugin.class, RETURNS_DEEP_STUBS);
+        BukkitScheduler scheduler = plugin.getServer().getScheduler();
+        command.setPlugin(plugin);
+        CommandSender sender = mock(CommandSender.class);
+
+        command.execute(sender, new String[]{"slow"});
+        command.execute(sender, new String[]{"slow"});
+        assertEquals(2, executions.get());
+        assertEquals(Map.of("root.slow", 2), budget.getSlowBodies());
+        assertEquals(Set.of("root.slow"), budget.getPromoted());
+
+        command.execute(sender, new String[]{"slow"});
+        assertEquals(2, executions.get());
+        verify(scheduler).runTaskAsynchronously(eq(plugin), any(Runnable.class));
+
+        budget.reset("root.slow");
+        command.execute(sender, new String[]{"slow"});
+        assertEquals(3, executions.get());
+    }
+
+    @Test
+    void slowBody_NoPromotion()
+    {
+        TickBudget budget = new TickBudget(Duration.ofMillis(1));
+        CommandDefinition command = new CommandBuilder("root")
+                .command(env -> sleep(5))
+                .build(null);
+        command.setTickBudget(budget);
+
+        command.execute(mock(CommandSender.class), new String[0]);
+
+        assertTrue(budget.getPromoted().isEmpty());
+    }
+
+    @Test
+    void fastBody_NotRecorded()
+    {
+        TickBudget budget = new TickBudget(Duration.ofSeconds(10), 1);
+        CommandDefinition command = new CommandBuilder("root")
+                .tickBudget(budget)
+                .command(env -> {
+                })
+                .build(null);
+
+        command.execute(mock(CommandSender.class), new String[0]);
+
+        assertTrue(budget.getSlowBodies().isEmpty());
+    }
+}